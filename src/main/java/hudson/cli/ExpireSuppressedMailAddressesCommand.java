@@ -0,0 +1,49 @@
+package hudson.cli;
+
+import hudson.Extension;
+import jenkins.model.Jenkins;
+import jenkins.plugins.mailer.tasks.SuppressionList;
+import jenkins.plugins.mailer.tasks.i18n.Messages;
+import org.kohsuke.args4j.Option;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Sends mail again to the suppressed addresses read from stdin, one per line, or to those suppressed for some days.
+ */
+@Extension
+public class ExpireSuppressedMailAddressesCommand extends CLICommand {
+
+    @Option(name = "--older-than", usage = "Expire all addresses suppressed more than this many days ago instead of reading them from stdin")
+    public int olderThan = -1;
+
+    @Override
+    public String getShortDescription() {
+        return Messages.ExpireSuppressedMailAddressesCommand_ShortDescription();
+    }
+
+    @Override
+    protected int run() throws Exception {
+        Jenkins.get().checkPermission(Jenkins.MANAGE);
+        SuppressionList list = SuppressionList.get();
+        if (list == null) {
+            throw new IllegalStateException("Jenkins is not running");
+        }
+        if (olderThan >= 0) {
+            stdout.println(list.expireBefore(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(olderThan)));
+        } else {
+            stdout.println(list.expire(readAddresses(this)));
+        }
+        return 0;
+    }
+
+    static List<String> readAddresses(CLICommand command) throws IOException, InterruptedException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(command.stdin, command.getClientCharset()));
+        return reader.lines().map(String::trim).filter(line -> !line.isEmpty()).collect(Collectors.toList());
+    }
+}
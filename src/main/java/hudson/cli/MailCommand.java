@@ -26,9 +26,9 @@ package hudson.cli;
 import hudson.tasks.Mailer;
 import hudson.Extension;
 import jenkins.model.Jenkins;
+import jenkins.plugins.mailer.tasks.SmtpTransportPool;
 
 import jakarta.mail.internet.MimeMessage;
-import jakarta.mail.Transport;
 
 /**
  * Sends e-mail through Jenkins.
@@ -46,7 +46,9 @@ public class MailCommand extends CLICommand {
 
     protected int run() throws Exception {
         Jenkins.get().checkPermission(Jenkins.MANAGE);
-        Transport.send(new MimeMessage(Mailer.descriptor().createSession(), stdin));
+        MimeMessage msg = new MimeMessage(Mailer.descriptor().getSharedSession(), stdin);
+        msg.saveChanges();
+        SmtpTransportPool.get().send(msg);
         return 0;
     }
 }
@@ -0,0 +1,39 @@
+package hudson.cli;
+
+import hudson.Extension;
+import jenkins.model.Jenkins;
+import jenkins.plugins.mailer.tasks.SuppressionList;
+import jenkins.plugins.mailer.tasks.i18n.Messages;
+import org.kohsuke.args4j.Option;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops sending mail to the addresses read from stdin, one per line.
+ */
+@Extension
+public class SuppressMailAddressesCommand extends CLICommand {
+
+    @Option(name = "--reason", usage = "Why mail is no longer sent to these addresses")
+    public String reason = "Suppressed from the command line";
+
+    @Option(name = "--days", usage = "Days after which mail is sent to these addresses again, 0 for never")
+    public int days = -1;
+
+    @Override
+    public String getShortDescription() {
+        return Messages.SuppressMailAddressesCommand_ShortDescription();
+    }
+
+    @Override
+    protected int run() throws Exception {
+        Jenkins.get().checkPermission(Jenkins.MANAGE);
+        SuppressionList list = SuppressionList.get();
+        if (list == null) {
+            throw new IllegalStateException("Jenkins is not running");
+        }
+        long ttl = days < 0 ? -1 : TimeUnit.DAYS.toMillis(days);
+        stdout.println(list.add(ExpireSuppressedMailAddressesCommand.readAddresses(this), reason, ttl));
+        return 0;
+    }
+}
@@ -30,8 +30,18 @@ import hudson.ExtensionPoint;
 import hudson.model.User;
 import hudson.model.UserProperty;
 import hudson.scm.SCM;
+import jenkins.plugins.mailer.tasks.ResolvedAddressCache;
+import jenkins.plugins.mailer.tasks.ResolverFanOut;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -98,11 +108,46 @@ public abstract class MailAddressResolver implements ExtensionPoint {
      *      null if the inference failed.
      */
     public abstract String findMailAddressFor(User u);
+
+    /**
+     * Infers e-mail addresses of several users at once.
+     *
+     * <p>
+     * Resolvers able to look up many users in a single query, like a directory search,
+     * should override this method. By default, {@link #findMailAddressFor(User)} is called
+     * for each user in turn.
+     *
+     * <p>
+     * Like {@link #findMailAddressFor(User)}, this method can be invoked concurrently
+     * from multiple threads.
+     *
+     * @param users users to resolve addresses for
+     *
+     * @return
+     *      the addresses of the users an address was inferred for, leaving out the others.
+     * @since TODO
+     */
+    public Map<User, String> findMailAddressesFor(Collection<User> users) {
+        Map<User, String> addresses = new HashMap<>();
+        for (User u : users) {
+            try {
+                String email = findMailAddressFor(u);
+                if (email != null) {
+                    addresses.put(u, email);
+                }
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, this+" failed to resolve "+u+". Ignoring and moving on",e);
+            }
+        }
+        return addresses;
+    }
     
     /**
      * Try to resolve email address using resolvers.
      * If a user specifies a Mail {@link UserProperty}, then it will be used with
      * the highest priority.
+     * What the resolvers answer, including that none of them found an address, is remembered for a while
+     * and forgotten when the user is saved.
      * @param u user to resolve address for
      * @return User address or null if resolution failed
      */
@@ -117,6 +162,23 @@ public abstract class MailAddressResolver implements ExtensionPoint {
             return userPropertyAddress;
         }
 
+        String email = ResolvedAddressCache.get().resolve(u.getId(), () -> resolveWithExtensions(u));
+        if (email != null) {
+            return email;
+        }
+
+        // fall back logic
+        return resolveFast(u);
+    }
+
+    /**
+     * Asks the registered resolvers in turn, or all at once if {@link ResolverFanOut#isEnabled() enabled}.
+     * @return the first address found, or null if no resolver found one
+     */
+    private static ResolvedAddressCache.Resolution resolveWithExtensions(User u) {
+        if (ResolverFanOut.isEnabled()) {
+            return ResolverFanOut.resolve(all(), u);
+        }
         for (MailAddressResolver r : all()) {
             try {
                 String email = r.findMailAddressFor(u);
@@ -124,15 +186,79 @@ public abstract class MailAddressResolver implements ExtensionPoint {
                     if (LOGGER.isLoggable(Level.FINE)) {
                         LOGGER.fine(r+" resolved "+u.getId()+" to "+email);
                     }
-                    return email;
+                    return new ResolvedAddressCache.Resolution(email, r);
                 }
             } catch (Exception e) {
                 LOGGER.log(Level.WARNING, r+" failed to resolve "+u+". Ignoring and moving on",e);
             }
         }
+        return null;
+    }
 
-        // fall back logic
-        return resolveFast(u);
+    /**
+     * Try to resolve email addresses of several users like {@link #resolve(User)},
+     * asking each resolver once for all users it may know an address for.
+     * @param users users to resolve addresses for
+     * @return the addresses of the users whose address could be resolved, in the order of {@code users}
+     * @since TODO
+     */
+    public static Map<User, String> resolveAll(Collection<User> users) {
+        Map<User, String> addresses = new LinkedHashMap<>();
+        List<User> unknown = new ArrayList<>();
+        for (User u : users) {
+            // Use User Property with a highest priority
+            if (extractAddressFromUserProperty(u) == null) {
+                unknown.add(u);
+            }
+        }
+        Map<User, String> found = unknown.isEmpty() ? Collections.emptyMap()
+                : ResolvedAddressCache.get().resolveAll(unknown, User::getId, MailAddressResolver::resolveAllWithExtensions);
+        for (User u : users) {
+            String email = extractAddressFromUserProperty(u);
+            if (email == null) {
+                email = found.get(u);
+            }
+            if (email == null) {
+                // fall back logic
+                email = resolveFast(u);
+            }
+            if (email != null) {
+                addresses.put(u, email);
+            }
+        }
+        return addresses;
+    }
+
+    /**
+     * Asks the registered resolvers in turn for the users the previous ones found no address for,
+     * or all at once for all users if {@link ResolverFanOut#isEnabled() enabled}.
+     * @return the addresses found
+     */
+    private static Map<User, ResolvedAddressCache.Resolution> resolveAllWithExtensions(Collection<User> users) {
+        if (ResolverFanOut.isEnabled()) {
+            return ResolverFanOut.resolveAll(all(), users);
+        }
+        Map<User, ResolvedAddressCache.Resolution> found = new HashMap<>();
+        Set<User> remaining = new LinkedHashSet<>(users);
+        for (MailAddressResolver r : all()) {
+            if (remaining.isEmpty()) {
+                break;
+            }
+            try {
+                Map<User, String> addresses = r.findMailAddressesFor(new ArrayList<>(remaining));
+                for (Map.Entry<User, String> address : addresses.entrySet()) {
+                    if (address.getValue() != null && remaining.remove(address.getKey())) {
+                        if (LOGGER.isLoggable(Level.FINE)) {
+                            LOGGER.fine(r+" resolved "+address.getKey().getId()+" to "+address.getValue());
+                        }
+                        found.put(address.getKey(), new ResolvedAddressCache.Resolution(address.getValue(), r));
+                    }
+                }
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, r+" failed to resolve "+remaining.size()+" users. Ignoring and moving on",e);
+            }
+        }
+        return found;
     }
 
     /**
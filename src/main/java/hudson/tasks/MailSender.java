@@ -31,19 +31,21 @@ import hudson.Util;
 import hudson.model.*;
 import hudson.scm.ChangeLogSet;
 import jenkins.model.Jenkins;
+import jenkins.plugins.mailer.tasks.LogExcerpt;
 import jenkins.plugins.mailer.tasks.MailAddressFilter;
+import jenkins.plugins.mailer.tasks.MailBody;
+import jenkins.plugins.mailer.tasks.MailDeliveryQueue;
+import jenkins.plugins.mailer.tasks.MailOutbox;
 import jenkins.plugins.mailer.tasks.MimeMessageBuilder;
+import jenkins.plugins.mailer.tasks.ReadPermissionCache;
+import jenkins.plugins.mailer.tasks.SmtpTransportPool;
 import jenkins.plugins.mailer.tasks.i18n.Messages;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.AuthenticationException;
-import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.jenkinsci.plugins.displayurlapi.DisplayURLProvider;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import jakarta.mail.Address;
 import jakarta.mail.MessagingException;
-import jakarta.mail.Transport;
 import jakarta.mail.internet.AddressException;
 import jakarta.mail.internet.InternetAddress;
 import jakarta.mail.internet.MimeMessage;
@@ -52,6 +54,7 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -128,7 +131,21 @@ public class MailSender {
                         }
                     }
                     listener.getLogger().println(buf);
-                    Transport.send(mail);
+                    // fix the Message-ID now, delivery does not touch the headers again
+                    mail.saveChanges();
+                    if (SEND_ASYNCHRONOUSLY) {
+                        MailDeliveryQueue.get().submit(mail);
+                    } else {
+                        try {
+                            SmtpTransportPool.get().send(mail);
+                        } catch (MessagingException e) {
+                            MailOutbox outbox = MailOutbox.get();
+                            if (outbox == null || !outbox.spool(mail, e)) {
+                                throw e;
+                            }
+                            listener.getLogger().println(Messages.MailSender_Spooled(e.getMessage()));
+                        }
+                    }
 
                     build.addAction(new MailMessageIdAction(mail.getMessageID()));
                 } else {
@@ -212,9 +229,9 @@ public class MailSender {
         MimeMessage msg = createEmptyMail(build, listener);
 
         msg.setSubject(getSubject(build, Messages.MailSender_BackToNormalMail_Subject(subject)),charset);
-        StringBuilder buf = new StringBuilder();
+        MailBody buf = new MailBody(charset);
         appendBuildUrl(build, buf);
-        msg.setText(buf.toString(),charset);
+        buf.setTo(msg);
 
         return msg;
     }
@@ -228,6 +245,41 @@ public class MailSender {
         }
     }
 
+    /**
+     * Rewrites workspace paths in log lines to links to the workspace or the archived artifacts.
+     * The matcher and the URLs are shared by all lines, and each line is copied to the mail in a single pass.
+     */
+    static final class WorkspaceLinks {
+        private final Matcher matcher;
+        private final String workspaceUrl;
+        private final String artifactUrl;
+        private final Predicate<String> isArtifact;
+
+        WorkspaceLinks(Pattern wsPattern, String workspaceUrl, String artifactUrl, Predicate<String> isArtifact) {
+            this.matcher = wsPattern.matcher("");
+            this.workspaceUrl = workspaceUrl;
+            this.artifactUrl = artifactUrl;
+            this.isArtifact = isArtifact;
+        }
+
+        /**
+         * Appends a line with every workspace path replaced by a link.
+         */
+        void append(String line, StringBuilder buf) {
+            // Perl: $line =~ s{$rx}{$path = $2; $path =~ s!\\\\!/!g; $workspaceUrl . $path}eg;
+            Matcher m = matcher.reset(line);
+            int pos = 0;
+            while (m.find()) {
+                String path = m.group(2).replace(File.separatorChar, '/');
+                String linkUrl = isArtifact.test(path) ? artifactUrl : workspaceUrl;
+                // what Matcher.appendReplacement does, without interpreting '$' and '\' in the link
+                buf.append(line, pos, m.start()).append('<').append(linkUrl).append(Util.encode(path)).append('>');
+                pos = m.end();
+            }
+            buf.append(line, pos, line.length());
+        }
+    }
+
     private MimeMessage createUnstableMail(Run<?, ?> build, TaskListener listener) throws MessagingException, UnsupportedEncodingException {
         MimeMessage msg = createEmptyMail(build, listener);
 
@@ -245,7 +297,7 @@ public class MailSender {
         }
 
         msg.setSubject(getSubject(build, subject), charset);
-        StringBuilder buf = new StringBuilder();
+        MailBody buf = new MailBody(charset);
         DisplayURLProvider displayURLProvider = DisplayURLProvider.get();
         // Link to project changes summary for "still unstable" if this or last build has changes
         if (still && !(getChangeSet(build).isEmptySet() && getChangeSet(prev).isEmptySet())) {
@@ -253,12 +305,12 @@ public class MailSender {
         } else {
             appendBuildUrl(build, buf);
         }
-        msg.setText(buf.toString(), charset);
+        buf.setTo(msg);
 
         return msg;
     }
 
-    private void appendBuildUrl(Run<?, ?> build, StringBuilder buf) {
+    private void appendBuildUrl(Run<?, ?> build, MailBody buf) {
         if (getChangeSet(build).isEmptySet()) {
             appendUrl(DisplayURLProvider.get().getRunURL(build), buf);
         } else {
@@ -266,7 +318,7 @@ public class MailSender {
         }
     }
 
-    private void appendUrl(String url, StringBuilder buf) {
+    private void appendUrl(String url, MailBody buf) {
         buf.append(Messages.MailSender_Link(url)).append("\n\n");
     }
 
@@ -275,7 +327,7 @@ public class MailSender {
 
         msg.setSubject(getSubject(build, Messages.MailSender_FailureMail_Subject()),charset);
 
-        StringBuilder buf = new StringBuilder();
+        MailBody buf = new MailBody(charset);
         appendBuildUrl(build, buf);
 
         // add new line before iterating over changes to have a proper formatting in the mail itself
@@ -300,17 +352,16 @@ public class MailSender {
         try {
             // Restrict max log size to avoid sending enormous logs over email.
             // Interested users can always look at the log on the web server.
-            List<String> lines = build.getLog(MAX_LOG_LINES);
+            List<String> lines = LogExcerpt.tail(build, MAX_LOG_LINES, MAX_LOG_BYTES);
 
-            String workspaceUrl = null, artifactUrl = null;
-            Pattern wsPattern = null;
+            WorkspaceLinks links = null;
             String baseUrl = Mailer.descriptor().getUrl();
             if (baseUrl != null) {
                 // Hyperlink local file paths to the repository workspace or build artifacts.
                 // Note that it is possible for a failure mail to refer to a file using a workspace
                 // URL which has already been corrected in a subsequent build. To fix, archive.
-                workspaceUrl = baseUrl + Util.encode(build.getParent().getUrl()) + "ws/";
-                artifactUrl = baseUrl + Util.encode(build.getUrl()) + "artifact/";
+                String workspaceUrl = baseUrl + Util.encode(build.getParent().getUrl()) + "ws/";
+                String artifactUrl = baseUrl + Util.encode(build.getUrl()) + "artifact/";
                 FilePath ws = build instanceof AbstractBuild ? ((AbstractBuild) build).getWorkspace() : null;
                 // Match either file or URL patterns, i.e. either
                 // c:\hudson\workdir\jobs\foo\workspace\src\Foo.java
@@ -321,26 +372,22 @@ public class MailSender {
                 // Careful with path separator between $1 and $2:
                 // workspaceDir will not normally end with one;
                 // workspaceDir.toURI() will end with '/' if and only if workspaceDir.exists() at time of call
-                wsPattern = ws == null ? null : Pattern.compile("(" +
-                    Pattern.quote(ws.getRemote()) + "|" + Pattern.quote(ws.toURI().toString()) + ")[/\\\\]?([^:#\\s]*)");
+                if (ws != null) {
+                    Pattern wsPattern = Pattern.compile("(" +
+                        Pattern.quote(ws.getRemote()) + "|" + Pattern.quote(ws.toURI().toString()) + ")[/\\\\]?([^:#\\s]*)");
+                    links = new WorkspaceLinks(wsPattern, workspaceUrl, artifactUrl, path -> artifactMatches(path, (AbstractBuild) build));
+                }
             }
+            StringBuilder linked = new StringBuilder();
             for (String line : lines) {
                 line = line.replace('\0',' '); // shall we replace other control code? This one is motivated by http://www.nabble.com/Problems-with-NULL-characters-in-generated-output-td25005177.html
-                if (wsPattern != null) {
-                    // Perl: $line =~ s{$rx}{$path = $2; $path =~ s!\\\\!/!g; $workspaceUrl . $path}eg;
-                    Matcher m = wsPattern.matcher(line);
-                    int pos = 0;
-                    while (m.find(pos)) {
-                        String path = m.group(2).replace(File.separatorChar, '/');
-                        String linkUrl = artifactMatches(path, (AbstractBuild) build) ? artifactUrl : workspaceUrl;
-                        String prefix = line.substring(0, m.start()) + '<' + linkUrl + Util.encode(path) + '>';
-                        pos = prefix.length();
-                        line = prefix + line.substring(m.end());
-                        // XXX better style to reuse Matcher and fix offsets, but more work
-                        m = wsPattern.matcher(line);
-                    }
+                if (links != null) {
+                    linked.setLength(0);
+                    links.append(line, linked);
+                    buf.append(linked);
+                } else {
+                    buf.append(line);
                 }
-                buf.append(line);
                 buf.append('\n');
             }
         } catch (IOException e) {
@@ -348,7 +395,7 @@ public class MailSender {
             buf.append(Messages.MailSender_FailureMail_FailedToAccessBuildLog()).append("\n\n").append(Functions.printThrowable(e));
         }
 
-        msg.setText(buf.toString(),charset);
+        buf.setTo(msg);
 
         return msg;
     }
@@ -362,6 +409,8 @@ public class MailSender {
         // but how do I obtain that?
 
         final AbstractBuild<?, ?> build = run instanceof AbstractBuild ? ((AbstractBuild<?, ?>)run) : null;
+        // builds whose culprits get the mail, resolved together at the end
+        List<AbstractBuild<?, ?>> culpritBuilds = new ArrayList<>();
 
         StringTokenizer tokens = new StringTokenizer(recipients);
         while (tokens.hasMoreTokens()) {
@@ -380,7 +429,10 @@ public class MailSender {
                     listener.getLogger().println("No such project exist: "+projectName);
                     continue;
                 }
-                messageBuilder.addRecipients(getCulpritsOfEmailList(up, build, listener));
+                List<AbstractBuild<?, ?>> upstreamBuilds = getUpstreamBuilds(up, build, listener);
+                if (upstreamBuilds != null) {
+                    culpritBuilds.addAll(upstreamBuilds);
+                }
             } else {
                 // ordinary address
                 messageBuilder.addRecipients(address);
@@ -389,13 +441,16 @@ public class MailSender {
 
         if (build != null) {
             for (AbstractProject project : includeUpstreamCommitters) {
-                String culprits = getCulpritsOfEmailList(project, build, listener);
-                if(culprits != null) {
-                    messageBuilder.addRecipients(culprits);
+                List<AbstractBuild<?, ?>> upstreamBuilds = getUpstreamBuilds(project, build, listener);
+                if(upstreamBuilds != null) {
+                    culpritBuilds.addAll(upstreamBuilds);
                 }
             }
             if (sendToIndividuals) {
-                messageBuilder.addRecipients(getUserEmailList(listener, build));
+                culpritBuilds.add(build);
+            }
+            if (!culpritBuilds.isEmpty()) {
+                messageBuilder.addRecipients(getCulpritAddresses(culpritBuilds, listener, messageBuilder));
             }
         }
         
@@ -428,6 +483,47 @@ public class MailSender {
     }
 
     String getCulpritsOfEmailList(AbstractProject upstreamProject, AbstractBuild<?, ?> currentBuild, TaskListener listener) throws AddressException, UnsupportedEncodingException {
+        List<AbstractBuild<?, ?>> upstreamBuilds = getUpstreamBuilds(upstreamProject, currentBuild, listener);
+        if (upstreamBuilds == null) {
+            return null;
+        }
+        Set<String> culpritEmails = new LinkedHashSet<>();
+        for (AbstractBuild<?, ?> b : upstreamBuilds) {
+            culpritEmails.addAll(userAddresses(listener, b, null));
+        }
+        return String.join(",", culpritEmails);
+    }
+
+    /**
+     * Resolves the culprits of several builds allowed to get mail, like {@link #getUserEmailList} does for each of them.
+     * The addresses of all culprits are resolved with a single {@link MailAddressResolver#resolveAll(Collection)} call,
+     * and each distinct address is parsed once.
+     * @param parser builder the addresses are meant for
+     */
+    @NonNull
+    Set<InternetAddress> getCulpritAddresses(List<AbstractBuild<?, ?>> builds, TaskListener listener, MimeMessageBuilder parser) throws UnsupportedEncodingException {
+        Set<User> culprits = new LinkedHashSet<>();
+        for (AbstractBuild<?, ?> b : builds) {
+            culprits.addAll(b.getCulprits());
+        }
+        Map<User, String> resolved = MailAddressResolver.resolveAll(culprits);
+        Set<String> addresses = new LinkedHashSet<>();
+        for (AbstractBuild<?, ?> b : builds) {
+            addresses.addAll(userAddresses(listener, b, resolved));
+        }
+        Set<InternetAddress> parsed = new LinkedHashSet<>();
+        for (String address : addresses) {
+            parsed.addAll(parser.toAddresses(address));
+        }
+        return parsed;
+    }
+
+    /**
+     * Lists the upstream builds since the upstream build of the previous build.
+     * @return the builds, or {@code null} if they could not be determined
+     */
+    @CheckForNull
+    private List<AbstractBuild<?, ?>> getUpstreamBuilds(AbstractProject upstreamProject, AbstractBuild<?, ?> currentBuild, TaskListener listener) {
         AbstractBuild<?,?> upstreamBuild = currentBuild.getUpstreamRelationshipBuild(upstreamProject);
         AbstractBuild<?,?> previousBuild = currentBuild.getPreviousBuild();
         AbstractBuild<?,?> previousBuildUpstreamBuild = previousBuild!=null ? previousBuild.getUpstreamRelationshipBuild(upstreamProject) : null;
@@ -441,21 +537,19 @@ public class MailSender {
         }
         AbstractBuild<?,?> b=previousBuildUpstreamBuild;
 
-        StringBuilder culpritEmails = new StringBuilder();
+        List<AbstractBuild<?, ?>> upstreamBuilds = new ArrayList<>();
         do {
             b = b.getNextBuild();
             if (b != null) {
-                String userEmails = getUserEmailList(listener, b);
-                if (culpritEmails.length() > 0) {
-                    culpritEmails.append(",");
-                }
-                culpritEmails.append(userEmails);
+                upstreamBuilds.add(b);
             }
         } while ( b != upstreamBuild && b != null );
 
-        return culpritEmails.toString();
+        return upstreamBuilds;
     }
 
+    /** If set, hand mail over to {@link MailDeliveryQueue} instead of waiting for the SMTP relay in the build thread. */
+    static /* not final */ boolean SEND_ASYNCHRONOUSLY = Boolean.getBoolean(MailSender.class.getName() + ".SEND_ASYNCHRONOUSLY");
     /** If set, send to known users who lack {@link Item#READ} access to the job. */
     static /* not final */ boolean SEND_TO_USERS_WITHOUT_READ = Boolean.getBoolean(MailSender.class.getName() + ".SEND_TO_USERS_WITHOUT_READ");
     /** If set, send to unknown users. */
@@ -465,50 +559,60 @@ public class MailSender {
 
     @NonNull
     String getUserEmailList(TaskListener listener, AbstractBuild<?, ?> build) throws AddressException, UnsupportedEncodingException {
+        return String.join(",", userAddresses(listener, build, null));
+    }
+
+    /**
+     * @param resolved addresses of the culprits resolved beforehand, or {@code null} to resolve them one by one
+     */
+    @NonNull
+    private Set<String> userAddresses(TaskListener listener, AbstractBuild<?, ?> build, @CheckForNull Map<User, String> resolved) {
         Set<User> users = build.getCulprits();
-        StringBuilder userEmails = new StringBuilder();
+        Set<String> userEmails = new LinkedHashSet<>();
         for (User a : users) {
-            String adrs = Util.fixEmpty(a.getProperty(Mailer.UserProperty.class).getAddress());
+            String adrs = Util.fixEmpty(resolved != null ? resolved.get(a) : a.getProperty(Mailer.UserProperty.class).getAddress());
             if(debug)
                 listener.getLogger().println("  User "+a.getId()+" -> "+adrs);
             if (adrs != null) {
                 if (Jenkins.get().isUseSecurity()) {
-                    try {
-                        Authentication auth = a.impersonate2();
-                        if (!build.getACL().hasPermission2(auth, Item.READ)) {
+                    ReadPermissionCache.Decision decision = ReadPermissionCache.get().check(a, build);
+                    switch (decision.getOutcome()) {
+                        case DENIED:
                             if (SEND_TO_USERS_WITHOUT_READ) {
                                 listener.getLogger().println(Messages.MailSender_warning_user_without_read(adrs,
                                                                                                            build.getFullDisplayName()));
+                                break;
                             } else {
                                 listener.getLogger().println(Messages.MailSender_user_without_read(adrs, build.getFullDisplayName()));
                                 continue;
                             }
-                        }
-                    } catch (UsernameNotFoundException x) {
-                        if (SEND_TO_UNKNOWN_USERS) {
-                            listener.getLogger().println(Messages.MailSender_warning_unknown_user(adrs));
-                        } else {
-                            listener.getLogger().println(Messages.MailSender_unknown_user(adrs));
-                            continue;
-                        }
-                    } catch (AuthenticationException e) {
-                        if (SEND_TO_UNAUTHORIZED_USERS) {
-                            listener.getLogger().println(Messages.MailSender_warning_unauthorized_user(adrs));
-                        } else {
-                            listener.getLogger().println(Messages.MailSender_unauthorized_user(adrs, e.getMessage()));
-                            continue;
-                        }
+                        case UNKNOWN_USER:
+                            if (SEND_TO_UNKNOWN_USERS) {
+                                listener.getLogger().println(Messages.MailSender_warning_unknown_user(adrs));
+                                break;
+                            } else {
+                                listener.getLogger().println(Messages.MailSender_unknown_user(adrs));
+                                continue;
+                            }
+                        case UNAUTHORIZED:
+                            if (SEND_TO_UNAUTHORIZED_USERS) {
+                                listener.getLogger().println(Messages.MailSender_warning_unauthorized_user(adrs));
+                                break;
+                            } else {
+                                listener.getLogger().println(Messages.MailSender_unauthorized_user(adrs, decision.getMessage()));
+                                continue;
+                            }
+                        case GRANTED:
+                        default:
+                            break;
                     }
                 }
-                if (userEmails.length() > 0) {
-                    userEmails.append(",");
-                }
-                userEmails.append(adrs);
+                userEmails.add(adrs);
             } else {
                 listener.getLogger().println(Messages.MailSender_NoAddress(a.getFullName()));
             }
         }
-        return userEmails.toString();
+        return userEmails;
     }
 
     private String getSubject(Run<?, ?> build, String caption) {
@@ -536,4 +640,6 @@ public class MailSender {
 
     private static final int MAX_LOG_LINES = Integer.getInteger(MailSender.class.getName()+".maxLogLines",250);
 
+    private static final long MAX_LOG_BYTES = Long.getLong(MailSender.class.getName()+".maxLogBytes",1024*1024);
+
 }
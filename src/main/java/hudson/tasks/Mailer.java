@@ -45,15 +45,23 @@ import hudson.util.Secret;
 import hudson.util.XStream2;
 
 import jenkins.model.JenkinsLocationConfiguration;
+import jenkins.plugins.mailer.tasks.ArtifactMatcher;
+import jenkins.plugins.mailer.tasks.SmtpRateLimiter;
+import jenkins.plugins.mailer.tasks.SmtpRelayBalancer;
+import jenkins.plugins.mailer.tasks.SmtpTransportPool;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.DataBoundConstructor;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
@@ -66,12 +74,10 @@ import jakarta.mail.Message;
 import jakarta.mail.MessagingException;
 import jakarta.mail.PasswordAuthentication;
 import jakarta.mail.Session;
-import jakarta.mail.Transport;
 import jakarta.mail.internet.AddressException;
 import jakarta.mail.internet.InternetAddress;
 import jakarta.mail.internet.MimeMessage;
 
-import org.apache.tools.ant.types.selectors.SelectorUtils;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.DataBoundSetter;
@@ -148,9 +154,16 @@ public class Mailer extends Notifier implements SimpleBuildStep {
         String recip = env.expand(recipients);
 
         new MailSender(recip, dontNotifyEveryUnstableBuild, sendToIndividuals, descriptor().getCharset()) {
+            /** Paths already checked for this mail, logs tend to mention the same files over and over. */
+            private final Map<String, Boolean> checked = new HashMap<>();
+
             /** Check whether a path (/-separated) will be archived. */
             @Override
             public boolean artifactMatches(String path, AbstractBuild<?,?> build) {
+                return checked.computeIfAbsent(path, p -> isArchived(p, build));
+            }
+
+            private boolean isArchived(String path, AbstractBuild<?,?> build) {
                 // TODO a Notifier runs after a Recorder so it would make more sense to just check actual artifacts, not configuration
                 // (Anyway currently this code would only be called for an AbstractBuild, since otherwise we cannot know what hyperlink to use for a random workspace.)
                 ArtifactArchiver aa = build.getProject().getPublishersList().get(ArtifactArchiver.class);
@@ -158,18 +171,13 @@ public class Mailer extends Notifier implements SimpleBuildStep {
                     LOGGER.finer("No ArtifactArchiver found");
                     return false;
                 }
-                String artifacts = aa.getArtifacts();
-                for (String include : artifacts.split("[, ]+")) {
-                    String pattern = include.replace(File.separatorChar, '/');
-                    if (pattern.endsWith("/")) {
-                        pattern += "**";
-                    }
-                    if (SelectorUtils.matchPath(pattern, path)) {
-                        LOGGER.log(Level.FINER, "DescriptorImpl.artifactMatches true for {0} against {1}", new Object[] {path, pattern});
-                        return true;
-                    }
+                ArtifactMatcher matcher = ArtifactMatcher.of(build.getProject(), aa.getArtifacts(), aa.getExcludes());
+                String pattern = matcher.match(path);
+                if (pattern != null) {
+                    LOGGER.log(Level.FINER, "DescriptorImpl.artifactMatches true for {0} against {1}", new Object[] {path, pattern});
+                    return true;
                 }
-                LOGGER.log(Level.FINER, "DescriptorImpl.artifactMatches for {0} matched none of {1}", new Object[] {path, artifacts});
+                LOGGER.log(Level.FINER, "DescriptorImpl.artifactMatches for {0} matched none of {1}", new Object[] {path, matcher.getIncludes()});
                 return false;
             }
         }.run(build,listener);
@@ -311,16 +319,44 @@ public class Mailer extends Notifier implements SimpleBuildStep {
          * The charset to use for the text and subject.
          */
         private String charset;
+
+        /**
+         * SMTP servers to send mail through besides {@link #smtpHost}.
+         */
+        private List<SmtpRelay> relays;
+
+        /**
+         * How mail is spread over {@link #smtpHost} and {@link #relays}. Null for {@link SmtpRelayBalancer.Strategy#PRIORITY}.
+         */
+        private SmtpRelayBalancer.Strategy relaySelection;
+
+        /**
+         * Sustained number of messages per second sent to the SMTP server. 0 for no limit.
+         */
+        private double rateLimit;
+
+        /**
+         * Number of messages which may be sent at once before {@link #rateLimit} kicks in.
+         */
+        private int rateLimitBurst;
         
         /**
          * Used to keep track of number test e-mails.
          */
         private static transient AtomicInteger testEmailCount = new AtomicInteger(0);
 
+        /**
+         * Session shared by the mail sent by this plugin, rebuilt whenever the SMTP settings change.
+         * @see #getSharedSession()
+         */
+        private transient volatile Session sharedSession;
+
         @SuppressFBWarnings(value = "ST_WRITE_TO_STATIC_FROM_INSTANCE_METHOD", 
                 justification = "Writing to a deprecated field")
         public DescriptorImpl() {
             load();
+            applyRateLimit();
+            updateSession();
             DESCRIPTOR = this;
         }
 
@@ -355,6 +391,49 @@ public class Mailer extends Notifier implements SimpleBuildStep {
         public Session createSession() {
             return createSession(smtpHost,smtpPort,useSsl,useTls,getSmtpAuthUserName(),getSmtpAuthPasswordSecret());
         }
+
+        /**
+         * Session the mail sent by this plugin is created with, built once per change of the SMTP settings
+         * and balanced over the relays by {@link SmtpRelayBalancer}. Callers must not modify it.
+         */
+        @Restricted(NoExternalUse.class)
+        public Session getSharedSession() {
+            Session session = sharedSession;
+            return session != null ? session : updateSession();
+        }
+
+        /**
+         * Rebuilds the shared session after a change of the SMTP settings and hands it to {@link SmtpRelayBalancer}.
+         * Within {@link #configure(StaplerRequest2, JSONObject)} this is done once, after all settings are bound.
+         */
+        private synchronized Session updateSession() {
+            if (BulkChange.contains(this) && sharedSession != null) {
+                return sharedSession;
+            }
+            Session session = createSession();
+            configureRelays(session);
+            sharedSession = session;
+            return session;
+        }
+
+        /**
+         * Hands the sessions of all relays to {@link SmtpRelayBalancer}, which then spreads mail created with {@code primary} over them.
+         */
+        private void configureRelays(Session primary) {
+            List<SmtpRelayBalancer.Relay> targets = new ArrayList<>();
+            String primaryName = smtpHost == null ? "localhost" : smtpHost;
+            targets.add(new SmtpRelayBalancer.Relay(smtpPort == null ? primaryName : primaryName + ":" + smtpPort, primary, 1));
+            for (SmtpRelay relay : getRelays()) {
+                if (relay.getHost() == null) {
+                    continue;
+                }
+                String port = relay.getPort() == null ? smtpPort : relay.getPort();
+                Session session = createSession(relay.getHost(), port, useSsl, useTls, getSmtpAuthUserName(), getSmtpAuthPasswordSecret());
+                targets.add(new SmtpRelayBalancer.Relay(port == null ? relay.getHost() : relay.getHost() + ":" + port, session, relay.getWeight()));
+            }
+            SmtpRelayBalancer.get().configure(primary, targets, getRelaySelection());
+        }
+
         private static Session createSession(String smtpHost, String smtpPort, boolean useSsl, boolean useTls, String smtpAuthUserName, Secret smtpAuthPassword) {
             final String SMTP_PORT_PROPERTY = "mail.smtp.port";
             final String SMTP_SOCKETFACTORY_PORT_PROPERTY = "mail.smtp.socketFactory.port";
@@ -445,14 +524,26 @@ public class Mailer extends Notifier implements SimpleBuildStep {
             // case of failure to databind, it gets reverted to previous value.
             // Would not be necessary by https://github.com/jenkinsci/jenkins/pull/3669
             SMTPAuthentication current = this.authentication;
+            // the same goes for the relays once the last one is removed
+            List<SmtpRelay> currentRelays = this.relays;
+            // the rate limit is applied as soon as it is bound, so it is put back as well
+            double currentRateLimit = this.rateLimit;
+            int currentRateLimitBurst = this.rateLimitBurst;
             
             try (BulkChange b = new BulkChange(this)) {
                 this.authentication = null;
+                this.relays = null;
                 req.bindJSON(this, json);
                 b.commit();
             } catch (IOException e) {
                 this.authentication = current;
+                this.relays = currentRelays;
+                this.rateLimit = currentRateLimit;
+                this.rateLimitBurst = currentRateLimitBurst;
+                applyRateLimit();
                 throw new FormException("Failed to apply configuration", e, null);
+            } finally {
+                updateSession();
             }
             
             return true;
@@ -566,24 +657,28 @@ public class Mailer extends Notifier implements SimpleBuildStep {
         @DataBoundSetter
         public void setSmtpHost(String smtpHost) {
             this.smtpHost = Util.fixEmptyAndTrim(smtpHost);
+            updateSession();
             save();
         }
 
         @DataBoundSetter
         public void setUseSsl(boolean useSsl) {
             this.useSsl = useSsl;
+            updateSession();
             save();
         }
 
         @DataBoundSetter
         public void setUseTls(boolean useTls) {
             this.useTls = useTls;
+            updateSession();
             save();
         }
 
         @DataBoundSetter
         public void setSmtpPort(String smtpPort) {
             this.smtpPort = Util.fixEmptyAndTrim(smtpPort);
+            updateSession();
             save();
         }
 
@@ -596,9 +691,68 @@ public class Mailer extends Notifier implements SimpleBuildStep {
             save();
         }
 
+        @NonNull
+        public List<SmtpRelay> getRelays() {
+            return relays == null ? Collections.emptyList() : Collections.unmodifiableList(relays);
+        }
+
+        @DataBoundSetter
+        public void setRelays(@CheckForNull List<SmtpRelay> relays) {
+            this.relays = relays == null || relays.isEmpty() ? null : new ArrayList<>(relays);
+            updateSession();
+            save();
+        }
+
+        @NonNull
+        public SmtpRelayBalancer.Strategy getRelaySelection() {
+            return relaySelection == null ? SmtpRelayBalancer.Strategy.PRIORITY : relaySelection;
+        }
+
+        @DataBoundSetter
+        public void setRelaySelection(@CheckForNull SmtpRelayBalancer.Strategy relaySelection) {
+            this.relaySelection = relaySelection;
+            updateSession();
+            save();
+        }
+
+        public double getRateLimit() {
+            return rateLimit;
+        }
+
+        @DataBoundSetter
+        public void setRateLimit(double rateLimit) {
+            this.rateLimit = Math.max(0, rateLimit);
+            applyRateLimit();
+            save();
+        }
+
+        public int getRateLimitBurst() {
+            return rateLimitBurst;
+        }
+
+        @DataBoundSetter
+        public void setRateLimitBurst(int rateLimitBurst) {
+            this.rateLimitBurst = Math.max(0, rateLimitBurst);
+            applyRateLimit();
+            save();
+        }
+
+        private void applyRateLimit() {
+            SmtpRateLimiter.get().configure(rateLimit, rateLimitBurst);
+        }
+
+        /**
+         * @return the limiter, for its statistics to be shown along with the rate limit.
+         */
+        @Restricted(NoExternalUse.class)
+        public SmtpRateLimiter getRateLimiter() {
+            return SmtpRateLimiter.get();
+        }
+
         @DataBoundSetter
         public void setAuthentication(@CheckForNull SMTPAuthentication authentication) {
             this.authentication = authentication;
+            updateSession();
             save();
         }
 
@@ -618,6 +772,7 @@ public class Mailer extends Notifier implements SimpleBuildStep {
             } else {
                 this.authentication = new SMTPAuthentication(userName, Secret.fromString(password));
             }
+            updateSession();
         }
 
         @Override
@@ -709,7 +864,8 @@ public class Mailer extends Notifier implements SimpleBuildStep {
                 msg.setSentDate(new Date());
                 msg.setRecipient(Message.RecipientType.TO, stringToAddress(sendTestMailTo, charset));
 
-                Transport.send(msg);                
+                msg.saveChanges();
+                SmtpTransportPool.get().send(msg);
                 return FormValidation.ok(Messages.Mailer_EmailSentSuccessfully());
             } catch (MessagingException e) {
                 return FormValidation.errorWithMarkup("<p>"+Messages.Mailer_FailedToSendEmail()+"</p><pre>"+Util.escape(Functions.printThrowable(e))+"</pre>");
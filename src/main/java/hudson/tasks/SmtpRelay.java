@@ -0,0 +1,76 @@
+package hudson.tasks;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * An SMTP server mail is sent through in addition to {@link Mailer.DescriptorImpl#getSmtpHost()}.
+ * It uses the same authentication, SSL and TLS settings.
+ */
+public class SmtpRelay extends AbstractDescribableImpl<SmtpRelay> {
+    private final String host;
+
+    /**
+     * Null to use {@link Mailer.DescriptorImpl#getSmtpPort()}.
+     */
+    private String port;
+
+    /**
+     * Share of the mail this relay gets relative to the others, the primary SMTP server having a weight of 1.
+     */
+    private int weight = 1;
+
+    @DataBoundConstructor
+    public SmtpRelay(String host) {
+        this.host = Util.fixEmptyAndTrim(host);
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public String getPort() {
+        return port;
+    }
+
+    @DataBoundSetter
+    public void setPort(String port) {
+        this.port = Util.fixEmptyAndTrim(port);
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    @DataBoundSetter
+    public void setWeight(int weight) {
+        this.weight = Math.max(1, weight);
+    }
+
+    @Override
+    public String toString() {
+        return port == null ? host : host + ":" + port;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<SmtpRelay> {
+
+        @Override
+        public String getDisplayName() {
+            return jenkins.plugins.mailer.tasks.i18n.Messages.SmtpRelay_DisplayName();
+        }
+
+        public FormValidation doCheckHost(@QueryParameter String value) {
+            if (Util.fixEmptyAndTrim(value) == null) {
+                return FormValidation.error(jenkins.plugins.mailer.tasks.i18n.Messages.SmtpRelay_HostRequired());
+            }
+            return FormValidation.ok();
+        }
+    }
+}
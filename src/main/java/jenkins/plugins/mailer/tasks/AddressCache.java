@@ -0,0 +1,134 @@
+package jenkins.plugins.mailer.tasks;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.tasks.Mailer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.InternetAddress;
+
+import java.io.UnsupportedEncodingException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Remembers recently parsed recipient addresses.
+ *
+ * <p>
+ * The same team addresses and distribution lists are on most mails, and parsing one with
+ * {@link Mailer#stringToAddress(String, String)} means matching it against a pattern and encoding its personal
+ * name. Parsed addresses are kept by raw token, charset and default suffix in a map of at most
+ * {@link #MAX_ENTRIES} entries, least recently used first out. As {@link InternetAddress} can be modified,
+ * callers get a copy of the cached address. Addresses which fail to parse are not remembered.
+ */
+@Restricted(NoExternalUse.class)
+public final class AddressCache {
+
+    /** Maximum number of parsed addresses kept, {@code 0} to disable the cache. */
+    static /* not final */ int MAX_ENTRIES = Integer.getInteger(AddressCache.class.getName() + ".maxEntries", 4096);
+
+    private static final AddressCache INSTANCE = new AddressCache();
+
+    // guarded by itself
+    private final Map<Key, InternetAddress> entries = new LinkedHashMap<Key, InternetAddress>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, InternetAddress> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    AddressCache() {
+    }
+
+    public static @NonNull AddressCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Completes an address without domain with the default suffix.
+     * @return the address to parse, or {@code null} if it has no domain and there is no usable default suffix
+     */
+    public static @CheckForNull String withDefaultSuffix(@NonNull String token, @CheckForNull String defaultSuffix) {
+        // if not a valid address (i.e. no '@'), then try adding suffix
+        if (token.contains("@")) {
+            return token;
+        }
+        if (defaultSuffix != null && defaultSuffix.contains("@")) {
+            return token + defaultSuffix;
+        }
+        return null;
+    }
+
+    /**
+     * Parses a recipient like {@link Mailer#stringToAddress(String, String)} after {@link #withDefaultSuffix}.
+     * @param token a single address, with or without personal name and domain
+     * @return a copy of the parsed address, or {@code null} if it has no domain and there is no usable default suffix
+     * @throws AddressException if the address is malformed
+     * @throws UnsupportedEncodingException if the charset is not supported
+     */
+    public @CheckForNull InternetAddress parse(@NonNull String token, @CheckForNull String charset, @CheckForNull String defaultSuffix)
+            throws AddressException, UnsupportedEncodingException {
+        Key key = new Key(token, charset, defaultSuffix);
+        InternetAddress address;
+        synchronized (entries) {
+            address = entries.get(key);
+        }
+        if (address == null) {
+            String completed = withDefaultSuffix(token, defaultSuffix);
+            if (completed == null) {
+                return null;
+            }
+            address = Mailer.stringToAddress(completed, charset);
+            if (MAX_ENTRIES > 0) {
+                synchronized (entries) {
+                    entries.put(key, address);
+                }
+            }
+        }
+        return (InternetAddress) address.clone();
+    }
+
+    void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static final class Key {
+        private final String token;
+        private final String charset;
+        private final String defaultSuffix;
+
+        Key(String token, String charset, String defaultSuffix) {
+            this.token = token;
+            this.charset = charset;
+            this.defaultSuffix = defaultSuffix;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return token.equals(that.token) && Objects.equals(charset, that.charset) && Objects.equals(defaultSuffix, that.defaultSuffix);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(token, charset, defaultSuffix);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package jenkins.plugins.mailer.tasks;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.listeners.ItemListener;
+import org.apache.tools.ant.types.selectors.TokenizedPath;
+import org.apache.tools.ant.types.selectors.TokenizedPattern;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Tells whether a workspace path is covered by the include and exclude patterns of an artifact archiver.
+ *
+ * <p>
+ * The patterns are compiled once: every glob is tokenized the way {@code SelectorUtils.matchPath} would do on
+ * each call, and filed in a trie under its leading literal directories. A path is then only tested against the
+ * patterns whose literal directories it starts with. Matchers are cached per job until its configuration is saved.
+ */
+@Restricted(NoExternalUse.class)
+public final class ArtifactMatcher {
+
+    private static final Pattern SEPARATORS = Pattern.compile("[, ]+");
+
+    private static final ConcurrentMap<String, ArtifactMatcher> CACHE = new ConcurrentHashMap<>();
+
+    private final String includes;
+    private final String excludes;
+    private final Node includeTrie;
+    private final Node excludeTrie;
+
+    private ArtifactMatcher(String includes, String excludes) {
+        this.includes = includes;
+        this.excludes = excludes;
+        this.includeTrie = compile(includes);
+        this.excludeTrie = compile(excludes);
+    }
+
+    /**
+     * Gets the matcher for the archiver settings of a job, compiling it if the settings changed.
+     * @param includes comma or space separated include patterns
+     * @param excludes comma or space separated exclude patterns, if any
+     */
+    public static @NonNull ArtifactMatcher of(@NonNull Job<?, ?> job, @NonNull String includes, @CheckForNull String excludes) {
+        String key = job.getFullName();
+        ArtifactMatcher matcher = CACHE.get(key);
+        if (matcher == null || !matcher.includes.equals(includes) || !Objects.equals(matcher.excludes, excludes)) {
+            matcher = compile(includes, excludes);
+            CACHE.put(key, matcher);
+        }
+        return matcher;
+    }
+
+    static @NonNull ArtifactMatcher compile(@NonNull String includes, @CheckForNull String excludes) {
+        return new ArtifactMatcher(includes, excludes);
+    }
+
+    /**
+     * @param path a {@code /}-separated path relative to the workspace
+     * @return the include pattern matching the path, or {@code null} if none does or the path is excluded
+     */
+    public @CheckForNull String match(@NonNull String path) {
+        String[] segments = segments(path);
+        TokenizedPath tokenized = new TokenizedPath(path);
+        TokenizedPattern include = includeTrie.find(segments, tokenized);
+        if (include == null || excludeTrie.find(segments, tokenized) != null) {
+            return null;
+        }
+        return include.getPattern();
+    }
+
+    /**
+     * @return the include patterns as configured.
+     */
+    public @NonNull String getIncludes() {
+        return includes;
+    }
+
+    private static Node compile(@CheckForNull String globs) {
+        Node root = new Node();
+        if (globs == null) {
+            return root;
+        }
+        for (String glob : SEPARATORS.split(globs)) {
+            if (glob.isEmpty()) {
+                continue;
+            }
+            String pattern = glob.replace(File.separatorChar, '/');
+            if (pattern.endsWith("/")) {
+                pattern += "**";
+            }
+            Node node = root;
+            for (String segment : segments(pattern)) {
+                if (hasWildcards(segment)) {
+                    break;
+                }
+                node = node.children.computeIfAbsent(segment, s -> new Node());
+            }
+            node.patterns.add(new TokenizedPattern(pattern));
+        }
+        return root;
+    }
+
+    private static String[] segments(String path) {
+        List<String> segments = new ArrayList<>();
+        int from = 0;
+        int length = path.length();
+        while (from <= length) {
+            int to = path.indexOf('/', from);
+            if (to < 0) {
+                to = length;
+            }
+            if (to > from) {
+                segments.add(path.substring(from, to));
+            }
+            from = to + 1;
+        }
+        return segments.toArray(new String[0]);
+    }
+
+    private static boolean hasWildcards(String segment) {
+        return segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0;
+    }
+
+    /**
+     * Patterns filed under their leading literal directories.
+     */
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private final List<TokenizedPattern> patterns = new ArrayList<>();
+
+        TokenizedPattern find(String[] segments, TokenizedPath path) {
+            Node node = this;
+            for (int depth = 0; node != null; depth++) {
+                for (TokenizedPattern pattern : node.patterns) {
+                    if (pattern.matchPath(path, true)) {
+                        return pattern;
+                    }
+                }
+                node = depth < segments.length ? node.children.get(segments[depth]) : null;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Drops the matcher of a job once its configuration is saved, renamed or deleted.
+     */
+    @Extension
+    @Restricted(NoExternalUse.class)
+    public static final class Invalidator extends ItemListener {
+        @Override
+        public void onUpdated(Item item) {
+            CACHE.remove(item.getFullName());
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            CACHE.remove(item.getFullName());
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            CACHE.remove(oldFullName);
+        }
+    }
+}
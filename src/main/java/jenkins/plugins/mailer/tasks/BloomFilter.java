@@ -0,0 +1,70 @@
+package jenkins.plugins.mailer.tasks;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Set of strings which may answer that it contains a string it does not, but never that it does not contain
+ * a string it does.
+ *
+ * <p>
+ * Each string sets a few bits picked by hashing it twice, so telling that a string is missing costs hashing it
+ * and reading as many bits, whatever the number of strings added. Not thread-safe: fill it, then publish it.
+ */
+final class BloomFilter {
+
+    private final long[] bits;
+    private final int hashes;
+
+    /**
+     * @param expected number of strings to be added
+     * @param falsePositives wanted probability of a false positive when that number is reached
+     */
+    BloomFilter(int expected, double falsePositives) {
+        int n = Math.max(1, expected);
+        long size = (long) Math.ceil(-n * Math.log(falsePositives) / (Math.log(2) * Math.log(2)));
+        size = Math.max(64, Math.min(size, Integer.MAX_VALUE - 63L));
+        bits = new long[(int) ((size + 63) / 64)];
+        hashes = Math.max(1, (int) Math.round((double) bits.length * 64 / n * Math.log(2)));
+    }
+
+    void add(@NonNull String s) {
+        long hash = hash(s);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long size = (long) bits.length * 64;
+        for (int i = 0; i < hashes; i++) {
+            long bit = ((h1 + i * h2) & Integer.MAX_VALUE) % size;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    boolean mightContain(@NonNull String s) {
+        long hash = hash(s);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long size = (long) bits.length * 64;
+        for (int i = 0; i < hashes; i++) {
+            long bit = ((h1 + i * h2) & Integer.MAX_VALUE) % size;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 64-bit FNV-1a, whose halves are used as two independent hashes.
+     */
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        // FNV leaves the high bits poorly mixed for short inputs
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,391 @@
+package jenkins.plugins.mailer.tasks;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.User;
+import hudson.tasks.MailMessageIdAction;
+import jenkins.model.Jenkins;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.util.SharedFileInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Puts the recipients of mail which bounced on the {@link SuppressionList}, reading the delivery status
+ * notifications from a mailbox exported to a local Maildir or mbox file.
+ *
+ * <p>
+ * Only notifications about mail Jenkins sent are taken into account: the {@code X-Jenkins-Job} header of the
+ * returned headers must name an existing job, and anything else is logged and skipped. When the
+ * {@code Message-ID} matches the {@link MailMessageIdAction} of a recent build of that job, the build is named in
+ * the reason of the suppression. The users each suppressed address belongs to, as found in the
+ * {@link UserAddressIndex}, are named in the log of the run. Where to resume is kept in {@code mailer-bounce-cursor.properties} under
+ * {@code JENKINS_HOME}: for an mbox file the offset of the first message not read yet, for a Maildir the unique
+ * names of the messages read, which stay the same when a message is moved from {@code new} to {@code cur}.
+ * A message at the end of an mbox file is only read once the file did not grow for a whole period, as it may
+ * still be being written. At most {@link #MAX_MESSAGES} messages are read per run, so that a large backlog is
+ * worked through over several runs.
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public final class BounceIngestion extends AsyncPeriodicWork {
+
+    private static final Logger LOGGER = Logger.getLogger(BounceIngestion.class.getName());
+
+    /** Maildir directory or mbox file to read bounces from; none by default. */
+    static /* not final */ String PATH = System.getProperty(BounceIngestion.class.getName() + ".path");
+    /** Milliseconds between two runs. */
+    static /* not final */ long PERIOD = Long.getLong(BounceIngestion.class.getName() + ".period", TimeUnit.MINUTES.toMillis(15));
+    /** Maximum number of messages read per run. */
+    static /* not final */ int MAX_MESSAGES = Integer.getInteger(BounceIngestion.class.getName() + ".maxMessages", 1000);
+    /** Number of recent builds of a job searched for the returned message. */
+    static /* not final */ int MAX_BUILDS = Integer.getInteger(BounceIngestion.class.getName() + ".maxBuilds", 50);
+
+    public BounceIngestion() {
+        super("Mail bounce ingestion");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return Math.max(PERIOD, TimeUnit.MINUTES.toMillis(1));
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        SuppressionList list = SuppressionList.get();
+        if (PATH == null || list == null) {
+            return;
+        }
+        Jenkins jenkins = Jenkins.get();
+        File source = new File(PATH);
+        Cursor cursor = Cursor.load(new File(jenkins.getRootDir(), "mailer-bounce-cursor.properties"), source);
+        Map<String, String> failed = new LinkedHashMap<>();
+        int read;
+        if (source.isDirectory()) {
+            read = readMaildir(source, cursor, failed);
+        } else if (source.isFile()) {
+            read = readMbox(source, cursor, failed);
+        } else {
+            listener.getLogger().println("No Maildir or mbox at " + source);
+            return;
+        }
+        // suppress first, so that a failure to save the cursor only means reading some messages twice
+        if (!failed.isEmpty()) {
+            list.add(failed, -1);
+            UserAddressIndex users = UserAddressIndex.get();
+            for (String address : failed.keySet()) {
+                User user = users.getUser(address);
+                listener.getLogger().println("Suppressed " + address
+                        + (user != null ? ", the address of " + user.getFullName() + " (" + user.getId() + ")" : ""));
+            }
+        }
+        cursor.save();
+        listener.getLogger().println("Read " + read + " messages from " + source + ", suppressed " + failed.size() + " addresses");
+    }
+
+    /**
+     * Reads the files of a Maildir which were not read before, in the order they were delivered.
+     */
+    int readMaildir(@NonNull File maildir, @NonNull Cursor cursor, @NonNull Map<String, String> failed) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (String sub : new String[] {"new", "cur"}) {
+            File[] children = new File(maildir, sub).listFiles(File::isFile);
+            if (children != null) {
+                files.addAll(List.of(children));
+            }
+        }
+        if (files.isEmpty()) {
+            File[] children = maildir.listFiles(File::isFile);
+            if (children != null) {
+                files.addAll(List.of(children));
+            }
+        }
+        // a message moved from new to cur while listing shows up twice
+        Map<String, File> present = new LinkedHashMap<>();
+        for (File f : files) {
+            present.putIfAbsent(uniqueName(f.getName()), f);
+        }
+        // forget messages which were deleted, so that the cursor does not grow for ever
+        cursor.processed.retainAll(present.keySet());
+        Map<File, Long> modified = new HashMap<>();
+        List<File> pending = new ArrayList<>();
+        for (Map.Entry<String, File> e : present.entrySet()) {
+            if (!cursor.processed.contains(e.getKey())) {
+                modified.put(e.getValue(), e.getValue().lastModified());
+                pending.add(e.getValue());
+            }
+        }
+        pending.sort(Comparator.<File>comparingLong(modified::get).thenComparing(File::getName));
+        int read = 0;
+        for (File f : pending) {
+            if (read >= MAX_MESSAGES) {
+                break;
+            }
+            SharedFileInputStream in;
+            try {
+                in = new SharedFileInputStream(f);
+            } catch (FileNotFoundException e) {
+                continue; // moved away meanwhile, it is read under its new name next time
+            }
+            try {
+                ingest(in, f.getName(), failed);
+            } finally {
+                in.close();
+            }
+            cursor.processed.add(uniqueName(f.getName()));
+            read++;
+        }
+        return read;
+    }
+
+    /**
+     * @return the part of the name of a Maildir file which does not change when its flags do
+     */
+    static String uniqueName(String name) {
+        int info = name.indexOf(':');
+        return info >= 0 ? name.substring(0, info) : name;
+    }
+
+    /**
+     * Reads the messages of an mbox file from where the previous run stopped. A file smaller than that offset
+     * was rotated and is read from the start. The last message is left for the next run unless the file kept
+     * its size since the previous one, as the mail server may still be appending to it.
+     */
+    int readMbox(@NonNull File mbox, @NonNull Cursor cursor, @NonNull Map<String, String> failed) throws IOException {
+        long length = mbox.length();
+        boolean rotated = cursor.offset > length;
+        long offset = rotated ? 0 : cursor.offset;
+        boolean settled = !rotated && length == cursor.length;
+        if (offset == length) {
+            cursor.mbox(offset, length);
+            return 0;
+        }
+        SharedFileInputStream in = new SharedFileInputStream(mbox);
+        try {
+            int read = 0;
+            for (long[] message : splitMbox(in, offset, length, MAX_MESSAGES)) {
+                if (message[2] == length && !settled) {
+                    break; // possibly incomplete, to be read again from its From line
+                }
+                try (InputStream part = in.newStream(message[1], message[2])) {
+                    ingest(part, mbox.getName() + "@" + message[1], failed);
+                }
+                offset = message[2];
+                read++;
+            }
+            cursor.mbox(offset, length);
+            return read;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static final byte[] FROM = "From ".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Finds where messages start and end in an mbox file, by their {@code From } lines after a blank line.
+     * @param offset where to start, at a {@code From } line
+     * @param length where to stop
+     * @param max maximum number of messages to find
+     * @return where the {@code From } line of each message starts, where the message starts after it and where it
+     *         ends, which is at the next {@code From } line or at {@code length} for the last one
+     */
+    static List<long[]> splitMbox(@NonNull SharedFileInputStream mbox, long offset, long length, int max) throws IOException {
+        List<long[]> messages = new ArrayList<>();
+        long pos = offset;
+        long from = -1;
+        long start = -1;
+        long lineStart = offset;
+        int matched = 0;
+        boolean previousBlank = true;
+        boolean blank = true;
+        boolean fromLine = false;
+        try (InputStream in = new BufferedInputStream(mbox.newStream(offset, length))) {
+            int b;
+            while ((b = in.read()) >= 0) {
+                if (matched >= 0 && matched < FROM.length) {
+                    matched = b == FROM[matched] ? matched + 1 : -1;
+                    if (matched == FROM.length && previousBlank) {
+                        if (start >= 0) {
+                            messages.add(new long[] {from, start, lineStart});
+                            if (messages.size() >= max) {
+                                return messages;
+                            }
+                        }
+                        from = lineStart;
+                        start = -1;
+                        fromLine = true;
+                    }
+                }
+                if (b == '\n') {
+                    if (fromLine) {
+                        start = pos + 1;
+                        fromLine = false;
+                    }
+                    previousBlank = blank;
+                    blank = true;
+                    matched = 0;
+                    lineStart = pos + 1;
+                } else if (b != '\r') {
+                    blank = false;
+                }
+                pos++;
+            }
+        }
+        if (start >= 0 && start < pos) {
+            messages.add(new long[] {from, start, pos});
+        }
+        return messages;
+    }
+
+    private void ingest(InputStream in, String name, Map<String, String> failed) {
+        try {
+            MimeMessage message = new MimeMessage(Session.getInstance(new Properties()), in);
+            BounceParser.Bounce bounce = BounceParser.parse(message);
+            if (bounce == null || bounce.failures.isEmpty()) {
+                LOGGER.log(Level.FINE, "Skipping {0}, which reports no permanent failure", name);
+                return;
+            }
+            if (bounce.job == null) {
+                LOGGER.log(Level.FINE, "Skipping {0}, which is not about mail sent by Jenkins", name);
+                return;
+            }
+            String jobName = bounce.job.trim();
+            Job<?, ?> job = findJob(jobName);
+            if (job == null) {
+                LOGGER.log(Level.INFO, "Skipping bounce {0} of mail from {1}, which is not a job of this Jenkins", new Object[] {name, jobName});
+                return;
+            }
+            Run<?, ?> build = findBuild(job, bounce.messageId);
+            for (BounceParser.Failure failure : bounce.failures) {
+                StringBuilder reason = new StringBuilder("Bounced with ").append(failure.status);
+                if (failure.diagnostic != null) {
+                    reason.append(": ").append(failure.diagnostic);
+                }
+                reason.append(" (").append(build != null ? build.getFullDisplayName() : job.getFullName()).append(')');
+                failed.put(failure.address, reason.toString());
+            }
+        } catch (MessagingException | IOException | RuntimeException e) {
+            LOGGER.log(Level.FINE, "Skipping unreadable message " + name, e);
+        }
+    }
+
+    private static @CheckForNull Job<?, ?> findJob(String jobName) {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        return jenkins != null ? jenkins.getItemByFullName(jobName, Job.class) : null;
+    }
+
+    private static @CheckForNull Run<?, ?> findBuild(Job<?, ?> job, @CheckForNull String messageId) {
+        if (messageId == null) {
+            return null;
+        }
+        String id = messageId.trim();
+        for (Run<?, ?> run : job.getBuilds().limit(MAX_BUILDS)) {
+            MailMessageIdAction action = run.getAction(MailMessageIdAction.class);
+            if (action != null && id.equals(action.messageId)) {
+                return run;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Where the previous run stopped.
+     */
+    static final class Cursor {
+        private final File file;
+        private final String source;
+        /** Offset of the first mbox message not read yet. */
+        long offset;
+        /** Size of the mbox file at the previous run. */
+        long length = -1;
+        /** Unique names of the Maildir messages read. */
+        final Set<String> processed = new HashSet<>();
+
+        Cursor(@NonNull File file, @NonNull String source) {
+            this.file = file;
+            this.source = source;
+        }
+
+        /**
+         * @return the cursor for the given mailbox, starting over if the cursor was kept for another one
+         */
+        static Cursor load(@NonNull File file, @NonNull File mailbox) throws IOException {
+            Cursor cursor = new Cursor(file, mailbox.getAbsolutePath());
+            Properties props = new Properties();
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                props.load(in);
+            } catch (NoSuchFileException e) {
+                return cursor;
+            }
+            if (cursor.source.equals(props.getProperty("source"))) {
+                try {
+                    cursor.offset = Long.parseLong(props.getProperty("offset", "0"));
+                    cursor.length = Long.parseLong(props.getProperty("length", "-1"));
+                } catch (NumberFormatException e) {
+                    LOGGER.log(Level.WARNING, "Ignoring corrupt " + file, e);
+                    return new Cursor(file, cursor.source);
+                }
+                for (String name : props.getProperty("processed", "").split("/")) {
+                    if (!name.isEmpty()) {
+                        cursor.processed.add(name);
+                    }
+                }
+            }
+            return cursor;
+        }
+
+        void mbox(long offset, long length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        void save() throws IOException {
+            Properties props = new Properties();
+            props.setProperty("source", source);
+            props.setProperty("offset", Long.toString(offset));
+            props.setProperty("length", Long.toString(length));
+            // a file name cannot contain a slash
+            props.setProperty("processed", String.join("/", new TreeSet<>(processed)));
+            Path target = file.toPath();
+            Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                props.store(out, null);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package jenkins.plugins.mailer.tasks;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import jakarta.mail.BodyPart;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Multipart;
+import jakarta.mail.Part;
+import jakarta.mail.internet.InternetHeaders;
+import jakarta.mail.internet.MimeMultipart;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the recipients which failed permanently out of a delivery status notification (RFC 3464).
+ *
+ * <p>
+ * The {@code message/delivery-status} part is read one block of fields at a time, and of the returned message
+ * only the headers are read, to tell which job sent it.
+ */
+final class BounceParser {
+
+    /** Upper bound on the number of recipient blocks read from one report. */
+    private static final int MAX_BLOCKS = 1000;
+
+    private BounceParser() {
+    }
+
+    /**
+     * A recipient mail could not be delivered to.
+     */
+    static final class Failure {
+        final String address;
+        final String status;
+        final String diagnostic;
+
+        Failure(String address, String status, String diagnostic) {
+            this.address = address;
+            this.status = status;
+            this.diagnostic = diagnostic;
+        }
+    }
+
+    /**
+     * What a delivery status notification tells.
+     */
+    static final class Bounce {
+        final List<Failure> failures = new ArrayList<>();
+        /** {@code X-Jenkins-Job} of the returned message, if its headers were returned. */
+        String job;
+        /** {@code Message-ID} of the returned message, if its headers were returned. */
+        String messageId;
+    }
+
+    /**
+     * @param message a message, possibly a delivery status notification
+     * @return what it tells, or {@code null} if it is not a delivery status notification
+     */
+    static @CheckForNull Bounce parse(@NonNull Part message) throws MessagingException, IOException {
+        Bounce bounce = new Bounce();
+        return visit(message, bounce, 0) ? bounce : null;
+    }
+
+    private static boolean visit(Part part, Bounce bounce, int depth) throws MessagingException, IOException {
+        if (part.isMimeType("message/delivery-status") || part.isMimeType("message/global-delivery-status")) {
+            try (InputStream in = part.getInputStream()) {
+                readDeliveryStatus(in, bounce);
+            }
+            return true;
+        }
+        if (part.isMimeType("text/rfc822-headers") || part.isMimeType("message/rfc822")
+                || part.isMimeType("message/global") || part.isMimeType("message/global-headers")) {
+            try (InputStream in = part.getInputStream()) {
+                InternetHeaders headers = new InternetHeaders(in);
+                bounce.job = headers.getHeader("X-Jenkins-Job", null);
+                bounce.messageId = headers.getHeader("Message-ID", null);
+            }
+            return false;
+        }
+        if (part.isMimeType("multipart/*") && depth < 5) {
+            // parsed directly rather than through getContent(), which depends on the registered content handlers
+            Multipart multipart = new MimeMultipart(part.getDataHandler().getDataSource());
+            boolean found = false;
+            for (int i = 0; i < multipart.getCount(); i++) {
+                BodyPart child = multipart.getBodyPart(i);
+                found |= visit(child, bounce, depth + 1);
+            }
+            return found;
+        }
+        return false;
+    }
+
+    /**
+     * Reads the per-message block, then each per-recipient block, keeping recipients whose delivery failed
+     * with a permanent {@code 5.x.x} status. Temporary failures are retried by the relay and left alone.
+     */
+    static void readDeliveryStatus(@NonNull InputStream raw, @NonNull Bounce bounce) throws MessagingException, IOException {
+        BufferedInputStream in = new BufferedInputStream(raw);
+        for (int i = 0; i < MAX_BLOCKS; i++) {
+            in.mark(1);
+            if (in.read() < 0) {
+                return;
+            }
+            in.reset();
+            InternetHeaders fields = new InternetHeaders(in);
+            String action = fields.getHeader("Action", null);
+            String status = fields.getHeader("Status", null);
+            if (action == null || !action.trim().equalsIgnoreCase("failed") || status == null || !status.trim().startsWith("5")) {
+                continue;
+            }
+            String recipient = value(fields.getHeader("Final-Recipient", null));
+            if (recipient == null) {
+                recipient = value(fields.getHeader("Original-Recipient", null));
+            }
+            if (recipient != null) {
+                bounce.failures.add(new Failure(recipient, status.trim(), value(fields.getHeader("Diagnostic-Code", null))));
+            }
+        }
+    }
+
+    /**
+     * @return the value of a typed field such as {@code rfc822; alice@example.com}, unfolded
+     */
+    private static @CheckForNull String value(@CheckForNull String field) {
+        if (field == null) {
+            return null;
+        }
+        String v = field.replaceAll("\\s*\\r?\\n\\s*", " ").trim();
+        int semicolon = v.indexOf(';');
+        if (semicolon >= 0) {
+            v = v.substring(semicolon + 1).trim();
+        }
+        return v.isEmpty() ? null : v;
+    }
+}
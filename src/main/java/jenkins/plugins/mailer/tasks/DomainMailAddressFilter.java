@@ -0,0 +1,180 @@
+package jenkins.plugins.mailer.tasks;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.BulkChange;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.Util;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.security.Permission;
+import hudson.util.FormValidation;
+import jenkins.model.Jenkins;
+import jenkins.plugins.mailer.tasks.i18n.Messages;
+import net.sf.json.JSONObject;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+import jakarta.mail.internet.InternetAddress;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Excludes recipients by the domain of their address, following rules set on the system configuration page.
+ *
+ * <p>
+ * The rules are compiled into a {@link DomainTrie} when they are loaded and whenever they are saved, so checking
+ * a recipient does not depend on the number of rules.
+ */
+@Extension
+public final class DomainMailAddressFilter extends MailAddressFilter {
+
+    @Override
+    public boolean shouldFilter(Run<?, ?> build, TaskListener listener, InternetAddress address) {
+        return isFiltered(getRules(), listener, address);
+    }
+
+    @Override
+    public Set<InternetAddress> filterAll(Run<?, ?> build, TaskListener listener, Set<InternetAddress> addresses) {
+        DomainTrie rules = getRules();
+        Set<InternetAddress> filtered = new LinkedHashSet<>();
+        if (rules.isEmpty()) {
+            return filtered;
+        }
+        for (InternetAddress address : addresses) {
+            if (isFiltered(rules, listener, address)) {
+                filtered.add(address);
+            }
+        }
+        return filtered;
+    }
+
+    private static boolean isFiltered(DomainTrie rules, TaskListener listener, InternetAddress address) {
+        if (rules.isEmpty()) {
+            return false;
+        }
+        String domain = getDomain(address);
+        if (rules.isAllowed(domain)) {
+            return false;
+        }
+        listener.getLogger().println(Messages.DomainMailAddressFilter_Filtered(address));
+        return true;
+    }
+
+    static @CheckForNull String getDomain(@NonNull InternetAddress address) {
+        String a = address.getAddress();
+        int at = a != null ? a.lastIndexOf('@') : -1;
+        return at >= 0 ? a.substring(at + 1) : null;
+    }
+
+    private DomainTrie getRules() {
+        return ExtensionList.lookupSingleton(DescriptorImpl.class).rules;
+    }
+
+    @Extension
+    @Symbol("mailerDomains")
+    public static final class DescriptorImpl extends MailAddressFilterDescriptor {
+
+        /** Domains to allow, one per line. If there are any, addresses in other domains are excluded. */
+        private String allowedDomains;
+        /** Domains to deny, one per line. */
+        private String deniedDomains;
+
+        private transient volatile DomainTrie rules = new DomainTrie(null, null);
+
+        public DescriptorImpl() {
+            load();
+        }
+
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return Messages.DomainMailAddressFilter_DisplayName();
+        }
+
+        @NonNull
+        @Override
+        public Permission getRequiredGlobalConfigPagePermission() {
+            return Jenkins.MANAGE;
+        }
+
+        public String getAllowedDomains() {
+            return allowedDomains;
+        }
+
+        @DataBoundSetter
+        public void setAllowedDomains(String allowedDomains) {
+            this.allowedDomains = Util.fixEmptyAndTrim(allowedDomains);
+            save();
+        }
+
+        public String getDeniedDomains() {
+            return deniedDomains;
+        }
+
+        @DataBoundSetter
+        public void setDeniedDomains(String deniedDomains) {
+            this.deniedDomains = Util.fixEmptyAndTrim(deniedDomains);
+            save();
+        }
+
+        @Override
+        public boolean configure(StaplerRequest2 req, JSONObject json) throws FormException {
+            try (BulkChange b = new BulkChange(this)) {
+                req.bindJSON(this, json);
+                b.commit();
+            } catch (IOException e) {
+                throw new FormException("Failed to apply configuration", e, null);
+            }
+            return true;
+        }
+
+        @Override
+        public synchronized void load() {
+            super.load();
+            compile();
+        }
+
+        /**
+         * Compiles the rules once they are all set: within {@link #configure(StaplerRequest2, JSONObject)} when the
+         * {@link BulkChange} is committed, otherwise after each setter.
+         */
+        @Override
+        public synchronized void save() {
+            if (!BulkChange.contains(this)) {
+                compile();
+            }
+            super.save();
+        }
+
+        private void compile() {
+            rules = new DomainTrie(allowedDomains, deniedDomains);
+        }
+
+        @RequirePOST
+        public FormValidation doCheckAllowedDomains(@QueryParameter String value) {
+            return checkDomains(value);
+        }
+
+        @RequirePOST
+        public FormValidation doCheckDeniedDomains(@QueryParameter String value) {
+            return checkDomains(value);
+        }
+
+        private static FormValidation checkDomains(String value) {
+            Jenkins.get().checkPermission(Jenkins.MANAGE);
+            for (String domain : DomainTrie.domains(value)) {
+                if (!domain.matches("[\\p{L}\\p{N}_-]+(\\.[\\p{L}\\p{N}_-]+)*")) {
+                    return FormValidation.error(Messages.DomainMailAddressFilter_InvalidDomain(domain));
+                }
+            }
+            return FormValidation.ok();
+        }
+    }
+}
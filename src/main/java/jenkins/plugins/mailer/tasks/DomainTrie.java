@@ -0,0 +1,139 @@
+package jenkins.plugins.mailer.tasks;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Allow and deny rules for domains, keyed by their labels from the top-level domain down.
+ *
+ * <p>
+ * A rule for {@code example.com} applies to {@code example.com} and all its subdomains, and the rule for the
+ * longest matching domain wins, so that {@code ci.example.com} can be allowed while the rest of
+ * {@code example.com} is denied. Looking a domain up costs one map lookup per label, however many rules there
+ * are. Instances are not modified once built.
+ */
+final class DomainTrie {
+
+    enum Rule { ALLOW, DENY }
+
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private Rule rule;
+    }
+
+    private final Node root = new Node();
+    private int allowed;
+    private int denied;
+
+    /**
+     * @param allowed domains to allow, one per line
+     * @param denied domains to deny, one per line
+     */
+    DomainTrie(@CheckForNull String allowed, @CheckForNull String denied) {
+        for (String domain : domains(allowed)) {
+            add(domain, Rule.ALLOW);
+        }
+        for (String domain : domains(denied)) {
+            add(domain, Rule.DENY);
+        }
+    }
+
+    /**
+     * Splits rules into domains, ignoring blank lines, comments starting with {@code #}, and any leading
+     * {@code @}, {@code *.} or {@code .}.
+     */
+    static @NonNull String[] domains(@CheckForNull String rules) {
+        if (rules == null) {
+            return new String[0];
+        }
+        return rules.lines()
+                .map(line -> {
+                    int comment = line.indexOf('#');
+                    return normalize(comment >= 0 ? line.substring(0, comment) : line);
+                })
+                .filter(domain -> !domain.isEmpty())
+                .toArray(String[]::new);
+    }
+
+    private static String normalize(String domain) {
+        String d = domain.trim().toLowerCase(Locale.ROOT);
+        if (d.startsWith("@")) {
+            d = d.substring(1);
+        } else if (d.startsWith("*.")) {
+            d = d.substring(2);
+        }
+        while (d.startsWith(".")) {
+            d = d.substring(1);
+        }
+        while (d.endsWith(".")) {
+            d = d.substring(0, d.length() - 1);
+        }
+        return d;
+    }
+
+    private void add(String domain, Rule rule) {
+        Node node = root;
+        String[] labels = domain.split("\\.");
+        for (int i = labels.length - 1; i >= 0; i--) {
+            node = node.children.computeIfAbsent(labels[i], k -> new Node());
+        }
+        if (node.rule == null) {
+            if (rule == Rule.ALLOW) {
+                allowed++;
+            } else {
+                denied++;
+            }
+        } else if (node.rule == Rule.ALLOW && rule == Rule.DENY) {
+            allowed--;
+            denied++;
+        }
+        // denying wins over allowing the same domain
+        if (node.rule != Rule.DENY) {
+            node.rule = rule;
+        }
+    }
+
+    /**
+     * @param domain a domain
+     * @return the rule for the longest matching domain, or {@code null} if no rule matches
+     */
+    @CheckForNull Rule lookup(@NonNull String domain) {
+        String d = normalize(domain);
+        Rule rule = null;
+        Node node = root;
+        int end = d.length();
+        while (end > 0) {
+            int start = d.lastIndexOf('.', end - 1) + 1;
+            node = node.children.get(d.substring(start, end));
+            if (node == null) {
+                break;
+            }
+            if (node.rule != null) {
+                rule = node.rule;
+            }
+            end = start - 1;
+        }
+        return rule;
+    }
+
+    /**
+     * Decides whether mail may be sent to a domain: denied domains never, and if some domains are allowed,
+     * only those.
+     * @param domain a domain, or {@code null} if the address has none
+     */
+    boolean isAllowed(@CheckForNull String domain) {
+        Rule rule = domain != null ? lookup(domain) : null;
+        if (rule != null) {
+            return rule == Rule.ALLOW;
+        }
+        return allowed == 0;
+    }
+
+    boolean isEmpty() {
+        return allowed == 0 && denied == 0;
+    }
+}
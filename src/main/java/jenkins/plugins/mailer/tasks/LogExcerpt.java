@@ -0,0 +1,175 @@
+package jenkins.plugins.mailer.tasks;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Functions;
+import hudson.console.ConsoleNote;
+import hudson.model.AbstractBuild;
+import hudson.model.Run;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the last lines of a build log without going through the rest of it.
+ *
+ * <p>
+ * The log file is scanned backwards from its end in small chunks until enough line breaks were found,
+ * and only the bytes of those lines are decoded. Reading a failure excerpt therefore costs the same for a
+ * log of a few kilobytes as for one of several gigabytes. Besides the number of lines, the excerpt is limited
+ * in bytes, so that a few huge lines do not end up in a mail either. This applies to {@link AbstractBuild}s only,
+ * other builds such as Pipeline ones being read through {@link Run#getLog(int)}.
+ */
+@Restricted(NoExternalUse.class)
+public final class LogExcerpt {
+
+    private static final int CHUNK = 8192;
+    /** Bytes read when no positive limit is given. */
+    static final long DEFAULT_MAX_BYTES = 1024 * 1024;
+    /** Upper bound on the bytes read, so that they fit in one array. */
+    private static final long MAX_WINDOW = Integer.MAX_VALUE - 8;
+
+    private LogExcerpt() {
+    }
+
+    /**
+     * Reads the end of the log of a build, like {@link Run#getLog(int)} does.
+     * @param maxLines maximum number of lines
+     * @param maxBytes maximum number of bytes read, {@code 0} or less for {@link #DEFAULT_MAX_BYTES}
+     * @return at most {@code maxLines} lines without console notes, the first one saying how much was left out if the log was truncated
+     */
+    public static @NonNull List<String> tail(@NonNull Run<?, ?> build, int maxLines, long maxBytes) throws IOException {
+        // only the log of an AbstractBuild is sure to be a local file; Pipeline builds may keep theirs elsewhere
+        // and would have to copy it to a temporary file to answer getLogFile()
+        if (!(build instanceof AbstractBuild)) {
+            return build.getLog(maxLines);
+        }
+        File file = build.getLogFile();
+        Charset charset = build.getCharset();
+        // compressed logs and charsets in which a line break is not a single byte need the general code path
+        if (!file.isFile() || file.getName().endsWith(".gz") || !Arrays.equals("\n".getBytes(charset), new byte[] {'\n'})) {
+            return build.getLog(maxLines);
+        }
+        return ConsoleNote.removeNotes(read(file, charset, maxLines, maxBytes));
+    }
+
+    /**
+     * Reads the last lines of a file.
+     * @param charset a charset encoding a line break as the single byte {@code \n}
+     * @param maxLines maximum number of lines
+     * @param maxBytes maximum number of bytes read, {@code 0} or less for {@link #DEFAULT_MAX_BYTES}
+     * @return at most {@code maxLines} lines, the first one saying how much was left out if the file was truncated
+     */
+    static @NonNull List<String> read(@NonNull File file, @NonNull Charset charset, int maxLines, long maxBytes) throws IOException {
+        if (maxLines <= 0) {
+            return Collections.emptyList();
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long window = maxBytes > 0 ? Math.min(maxBytes, MAX_WINDOW) : DEFAULT_MAX_BYTES;
+            long limit = Math.max(0, size - window);
+            long start = -1;
+            // earliest line break seen, to drop a line cut in half by the byte limit
+            long earliestBreak = -1;
+            int breaks = 0;
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK);
+            long pos = size;
+            scan:
+            while (pos > limit) {
+                int length = (int) Math.min(CHUNK, pos - limit);
+                pos -= length;
+                buffer.clear().limit(length);
+                readFully(channel, buffer, pos);
+                for (int i = length - 1; i >= 0; i--) {
+                    if (buffer.get(i) != '\n') {
+                        continue;
+                    }
+                    long at = pos + i;
+                    if (at == size - 1) {
+                        // a trailing line break does not start another line
+                        continue;
+                    }
+                    earliestBreak = at;
+                    if (++breaks == maxLines) {
+                        start = at + 1;
+                        break scan;
+                    }
+                }
+            }
+            if (start < 0) {
+                if (limit == 0) {
+                    start = 0;
+                } else {
+                    start = earliestBreak >= 0 ? earliestBreak + 1 : limit;
+                }
+            }
+
+            byte[] bytes = new byte[(int) (size - start)];
+            readFully(channel, ByteBuffer.wrap(bytes), start);
+            List<String> lines = split(new String(bytes, charset));
+            if (start > 0) {
+                // like Run.getLog(int), the marker takes the place of the first line rather than adding one
+                if (lines.size() >= maxLines) {
+                    start += firstLineLength(bytes);
+                    lines.remove(0);
+                }
+                lines.add(0, "[...truncated " + Functions.humanReadableByteSize(start) + "...]");
+            }
+            return lines;
+        }
+    }
+
+    /**
+     * @return the number of bytes of the first line, including its line break
+     */
+    private static int firstLineLength(byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return bytes.length;
+    }
+
+    private static List<String> split(String text) {
+        List<String> lines = new ArrayList<>();
+        int from = 0;
+        int length = text.length();
+        while (from < length) {
+            int to = text.indexOf('\n', from);
+            int next;
+            if (to < 0) {
+                to = length;
+                next = length;
+            } else {
+                next = to + 1;
+            }
+            if (to > from && text.charAt(to - 1) == '\r') {
+                to--;
+            }
+            lines.add(text.substring(from, to));
+            from = next;
+        }
+        return lines;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Log file shrank while reading it");
+            }
+            position += read;
+        }
+    }
+}
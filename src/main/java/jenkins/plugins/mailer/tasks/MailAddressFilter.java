@@ -35,6 +35,8 @@ import hudson.model.Run;
 import hudson.model.TaskListener;
 import jenkins.model.Jenkins;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.logging.Level;
@@ -96,8 +98,32 @@ public abstract class MailAddressFilter implements Describable<MailAddressFilter
         }
     }
 
+    /**
+     * Checks which of the given email addresses should be excluded from the
+     * recipients of an email. Filters which look addresses up remotely should
+     * override this method to check them all at once; by default each address
+     * is checked with {@link #shouldFilter(Run, TaskListener, InternetAddress)}.
+     *
+     * @param build the current build.
+     * @param listener the task listener
+     * @param addresses email addresses, not to be modified
+     * @return the given addresses which are to be excluded from the recipients
+     * @since TODO
+     */
+    public Set<InternetAddress> filterAll(Run<?,?> build, TaskListener listener, Set<InternetAddress> addresses) {
+        Set<InternetAddress> filtered = new LinkedHashSet<InternetAddress>();
+        for (InternetAddress address : addresses) {
+            if (shouldFilter(build, listener, address)) {
+                filtered.add(address);
+            }
+        }
+        return filtered;
+    }
+
     /**
      * Returns a copy of the given set of recipients excluding addresses that are filtered out.
+     * The registered {@link MailAddressFilter} extensions are looked up once, and each of them
+     * checks the recipients the previous ones kept at once.
      * @param build the current build.
      * @param listener the task listener
      * @param recipients set of recipients
@@ -105,11 +131,26 @@ public abstract class MailAddressFilter implements Describable<MailAddressFilter
      */
     public static Set<InternetAddress> filterRecipients(Run<?,?> build, TaskListener listener, Set<InternetAddress> recipients) {
 
-        Set<InternetAddress> rcp = new LinkedHashSet<InternetAddress>();
+        Set<InternetAddress> rcp = new LinkedHashSet<InternetAddress>(recipients);
+        if (rcp.isEmpty()) {
+            return rcp;
+        }
 
-        for (InternetAddress address : recipients) {
-            if (!isFilteredRecipient(address, listener, build)) {
-                rcp.add(address);
+        for (MailAddressFilter filter : new ArrayList<MailAddressFilter>(allExtensions())) {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.log(Level.FINE, "Checking for filtered email addresses " + rcp + " with \"" + filter.getClass().getName() + "\"");
+            }
+            Set<InternetAddress> filtered = filter.filterAll(build, listener, Collections.unmodifiableSet(rcp));
+            if (filtered == null || filtered.isEmpty()) {
+                continue;
+            }
+            for (InternetAddress address : new ArrayList<InternetAddress>(filtered)) {
+                if (rcp.remove(address)) {
+                    LOGGER.log(Level.FINE, "Filtered out email recipient \"{0}\"", address);
+                }
+            }
+            if (rcp.isEmpty()) {
+                break;
             }
         }
 
@@ -123,30 +164,6 @@ public abstract class MailAddressFilter implements Describable<MailAddressFilter
         return filterRecipients(build, listener, recipients);
     }
 
-    /**
-     * Check if email address is to be excluded from recipient list by checking
-     * with each {@link MailAddressFilter} extension
-     * 
-     * @param listener
-     * @param build
-     * @return User address or null if resolution failed
-     */
-    private static boolean isFilteredRecipient(InternetAddress address, TaskListener listener, Run<?, ?> build) {
-
-        LOGGER.log(Level.FINE, "Checking for filtered email address for \"{0}\"", address);
-        
-        for (MailAddressFilter filter : allExtensions()) {
-            LOGGER.log(Level.FINE, "Checking for filtered email address for \"{0}\" with \"{1}\"", 
-                    new Object[] { address, filter.getClass().getName() });
-            if (filter.shouldFilter(build, listener, address)) {
-                LOGGER.log(Level.FINE, "Filtered out email recipient \"{0}\"", address);
-                return true;
-            }
-        }
-
-        return false;
-    }
-
     @Override
     public MailAddressFilterDescriptor getDescriptor() {
         return (MailAddressFilterDescriptor)Jenkins.get().getDescriptor(getClass());
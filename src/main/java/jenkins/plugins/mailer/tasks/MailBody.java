@@ -0,0 +1,244 @@
+package jenkins.plugins.mailer.tasks;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import jakarta.activation.DataHandler;
+import jakarta.activation.DataSource;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.HeaderTokenizer;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.MimeUtility;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.lang.ref.Cleaner;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Plain text body of a mail, encoded as it is written.
+ *
+ * <p>
+ * Instead of collecting the whole text in a {@link StringBuilder} and handing a copy of it to
+ * {@link MimeMessage#setText(String, String)}, the text is encoded right away into a buffer. Once the buffer
+ * holds more than {@link #MEMORY_LIMIT} bytes, it is moved to a temporary file, and the message reads its
+ * body from there when it is written out. The temporary file is deleted once the message is no longer used.
+ */
+@Restricted(NoExternalUse.class)
+public final class MailBody {
+
+    private static final Logger LOGGER = Logger.getLogger(MailBody.class.getName());
+
+    /** Number of bytes of a body kept in memory before it is moved to a temporary file. */
+    static /* not final */ int MEMORY_LIMIT = Integer.getInteger(MailBody.class.getName() + ".memoryLimit", 256 * 1024);
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final String contentType;
+    private final Buffer buffer;
+    private final Writer writer;
+    private boolean finished;
+
+    /**
+     * @param charset charset the text is encoded with, {@code null} for the default MIME charset
+     * @throws UnsupportedEncodingException if the charset is not supported
+     */
+    public MailBody(@CheckForNull String charset) throws UnsupportedEncodingException {
+        if (charset == null) {
+            charset = MimeUtility.getDefaultMIMECharset();
+        }
+        try {
+            if (!Charset.isSupported(charset)) {
+                throw new UnsupportedEncodingException(charset);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new UnsupportedEncodingException(charset);
+        }
+        contentType = "text/plain; charset=" + MimeUtility.quote(charset, HeaderTokenizer.MIME);
+        buffer = new Buffer();
+        writer = new OutputStreamWriter(buffer, Charset.forName(charset));
+        CLEANER.register(this, buffer.spill);
+    }
+
+    public MailBody append(@NonNull CharSequence text) {
+        return append(text, 0, text.length());
+    }
+
+    public MailBody append(@NonNull CharSequence text, int start, int end) {
+        checkNotFinished();
+        try {
+            writer.append(text, start, end);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    public MailBody append(char c) {
+        checkNotFinished();
+        try {
+            writer.write(c);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    private void checkNotFinished() {
+        if (finished) {
+            throw new IllegalStateException("The body was already added to a message");
+        }
+    }
+
+    /**
+     * Makes this the body of a message. Nothing can be appended afterwards.
+     */
+    public void setTo(@NonNull MimeMessage msg) throws MessagingException {
+        if (!finished) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                throw new MessagingException("Failed to write the mail body", e);
+            }
+            finished = true;
+        }
+        msg.setDataHandler(new DataHandler(new Source()));
+    }
+
+    /**
+     * @return number of encoded bytes written so far.
+     */
+    long size() {
+        return buffer.size;
+    }
+
+    /**
+     * @return whether the body was moved to a temporary file.
+     */
+    boolean isSpilled() {
+        return buffer.spill.file != null;
+    }
+
+    /**
+     * Reads the finished body. Keeps the {@link MailBody} and therefore its temporary file alive as long as the message uses it.
+     */
+    private final class Source implements DataSource {
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return buffer.read();
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            throw new IOException("The mail body is read-only");
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public String getName() {
+            return "body";
+        }
+    }
+
+    /**
+     * Byte buffer moving to a temporary file once it grows beyond {@link #MEMORY_LIMIT}.
+     */
+    private static final class Buffer extends OutputStream {
+        private final Spill spill = new Spill();
+        private byte[] bytes = new byte[1024];
+        private OutputStream out;
+        private long size;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (out == null && size + len > MEMORY_LIMIT) {
+                Path file = Files.createTempFile("mailer-body", ".txt");
+                out = new BufferedOutputStream(Files.newOutputStream(file));
+                spill.out = out;
+                spill.file = file;
+                out.write(bytes, 0, (int) size);
+                bytes = null;
+            }
+            if (out != null) {
+                out.write(b, off, len);
+            } else {
+                if (size + len > bytes.length) {
+                    bytes = Arrays.copyOf(bytes, (int) Math.max(bytes.length * 2L, size + len));
+                }
+                System.arraycopy(b, off, bytes, (int) size, len);
+            }
+            size += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (out != null) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (out != null) {
+                out.close();
+            }
+        }
+
+        InputStream read() throws IOException {
+            Path file = spill.file;
+            if (file != null) {
+                return Files.newInputStream(file);
+            }
+            return new ByteArrayInputStream(bytes, 0, (int) size);
+        }
+    }
+
+    /**
+     * Deletes the temporary file, if any, once the body is unreachable.
+     */
+    private static final class Spill implements Runnable {
+        private volatile Path file;
+        /** Still open if the body was abandoned before it was finished. */
+        private volatile OutputStream out;
+
+        @Override
+        public void run() {
+            Path f = file;
+            if (f != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Failed to close " + f, e);
+                }
+                try {
+                    Files.deleteIfExists(f);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to delete " + f, e);
+                }
+            }
+        }
+    }
+}
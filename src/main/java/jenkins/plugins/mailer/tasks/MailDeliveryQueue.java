@@ -0,0 +1,231 @@
+package jenkins.plugins.mailer.tasks;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.init.Terminator;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded in-process queue delivering {@link MimeMessage}s on its own threads,
+ * so that the thread which built a message does not have to wait for the SMTP relay.
+ *
+ * <p>
+ * On a JVM with virtual threads every delivery gets a virtual thread of its own, which costs next to nothing
+ * while it is blocked on the relay. Otherwise deliveries run on a small pool of platform threads. Either way the
+ * number of deliveries talking to the relay at the same time is capped by a semaphore of {@link #WORKERS} permits.
+ *
+ * <p>
+ * Messages must be {@link MimeMessage#saveChanges() saved} before they are submitted: delivery
+ * does not touch the headers again, so the {@code Message-ID} seen by the submitter is the one
+ * that goes out on the wire.
+ *
+ * <p>
+ * When the queue is full the message is delivered by the submitting thread instead. That applies
+ * back pressure to the producers rather than dropping mail. Retries of the {@link MailOutbox} are not
+ * delivered that way but scheduled again later.
+ */
+@Restricted(NoExternalUse.class)
+public final class MailDeliveryQueue {
+
+    private static final Logger LOGGER = Logger.getLogger(MailDeliveryQueue.class.getName());
+
+    /** Number of messages delivered at the same time. */
+    static /* not final */ int WORKERS = Integer.getInteger(MailDeliveryQueue.class.getName() + ".workers", 4);
+    /** If set, platform threads are used even where virtual threads are available. */
+    static /* not final */ boolean NO_VIRTUAL_THREADS = Boolean.getBoolean(MailDeliveryQueue.class.getName() + ".noVirtualThreads");
+    /** Number of messages which may wait for a worker before submitters deliver by themselves. */
+    static /* not final */ int CAPACITY = Integer.getInteger(MailDeliveryQueue.class.getName() + ".capacity", 1000);
+    /** Seconds to wait for queued mail to go out when Jenkins shuts down. */
+    static /* not final */ int SHUTDOWN_TIMEOUT = Integer.getInteger(MailDeliveryQueue.class.getName() + ".shutdownTimeout", 30);
+
+    private static MailDeliveryQueue instance;
+
+    private final ExecutorService executor;
+    /** Caps the deliveries in progress. */
+    private final Semaphore running;
+    /** Caps the deliveries accepted, whether in progress or still waiting for a {@link #running} permit. */
+    private final Semaphore accepted;
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    MailDeliveryQueue(int workers, int capacity) {
+        this(workers, capacity, !NO_VIRTUAL_THREADS);
+    }
+
+    MailDeliveryQueue(int workers, int capacity, boolean virtualThreads) {
+        running = new Semaphore(workers);
+        accepted = new Semaphore(workers + capacity);
+        ExecutorService virtual = virtualThreads ? newVirtualThreadExecutor() : null;
+        if (virtual != null) {
+            executor = virtual;
+        } else {
+            // the accepted permits bound the work queue
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "MailDeliveryQueue"));
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+    }
+
+    /**
+     * Creates an executor starting a virtual thread per task, looked up reflectively since the plugin
+     * still runs on Java versions without them.
+     * @return {@code null} if this JVM has no virtual threads
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "MailDeliveryQueue-", 0L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newExecutor.invoke(null, factory);
+        } catch (NoSuchMethodException | ClassNotFoundException e) {
+            return null;
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            // e.g. a preview API which is not enabled
+            LOGGER.log(Level.FINE, "Virtual threads are not available, using platform threads", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the queue shared by all senders, created on first use.
+     */
+    public static synchronized @NonNull MailDeliveryQueue get() {
+        if (instance == null) {
+            instance = new MailDeliveryQueue(Math.max(1, WORKERS), Math.max(1, CAPACITY));
+        }
+        return instance;
+    }
+
+    /**
+     * Queues a message for delivery and returns immediately.
+     * The message is written to the {@link MailOutbox} first, so it survives a restart and is retried
+     * if the relay is unavailable. Without an outbox, delivery failures are only logged, since the
+     * submitter is no longer around to report them.
+     * @param msg a message which has already been saved
+     */
+    public void submit(@NonNull MimeMessage msg) {
+        MailOutbox outbox = MailOutbox.get();
+        if (outbox != null) {
+            try {
+                outbox.submit(msg);
+                return;
+            } catch (IOException | MessagingException e) {
+                LOGGER.log(Level.WARNING, "Failed to spool e-mail " + messageIdOf(msg) + ", delivering it without retries", e);
+            }
+        }
+        execute(() -> deliver(msg));
+    }
+
+    /**
+     * Runs a delivery task on the queue's threads.
+     * When too many deliveries are pending already, the task runs in the calling thread instead.
+     */
+    void execute(@NonNull Runnable task) {
+        if (!tryExecute(task)) {
+            // shutting down or full: deliver in the caller rather than lose the message
+            task.run();
+        }
+    }
+
+    /**
+     * Runs a delivery task on the queue's threads if there is room for it.
+     * @return {@code false} if too many deliveries are pending already or the queue is shut down,
+     *         in which case the task was not run
+     */
+    boolean tryExecute(@NonNull Runnable task) {
+        if (!accepted.tryAcquire()) {
+            return false;
+        }
+        waiting.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    running.acquireUninterruptibly();
+                    waiting.decrementAndGet();
+                    try {
+                        task.run();
+                    } finally {
+                        running.release();
+                    }
+                } finally {
+                    accepted.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            waiting.decrementAndGet();
+            accepted.release();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return number of messages waiting for their delivery to start.
+     */
+    public int getQueueLength() {
+        return waiting.get();
+    }
+
+    /**
+     * @return whether deliveries run on virtual threads.
+     */
+    boolean isVirtual() {
+        return !(executor instanceof ThreadPoolExecutor);
+    }
+
+    private static void deliver(MimeMessage msg) {
+        try {
+            SmtpTransportPool.get().send(msg);
+        } catch (MessagingException e) {
+            LOGGER.log(Level.WARNING, "Failed to deliver e-mail " + messageIdOf(msg), e);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Unexpected failure delivering e-mail " + messageIdOf(msg), e);
+        }
+    }
+
+    private static String messageIdOf(MimeMessage msg) {
+        try {
+            return msg.getMessageID();
+        } catch (MessagingException e) {
+            return "<unknown>";
+        }
+    }
+
+    @Terminator
+    public static void shutdown() throws InterruptedException {
+        MailDeliveryQueue queue;
+        synchronized (MailDeliveryQueue.class) {
+            queue = instance;
+            instance = null;
+        }
+        if (queue != null) {
+            queue.executor.shutdown();
+            if (!queue.executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                LOGGER.log(Level.WARNING, "{0} queued e-mails were not delivered before shutdown", queue.getQueueLength());
+            }
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package jenkins.plugins.mailer.tasks;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.tasks.Mailer;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import jakarta.mail.Address;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.internet.MimeMessage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Spool directory under {@code JENKINS_HOME} holding messages which have not been delivered yet.
+ *
+ * <p>
+ * Each message is stored as an RFC 822 file until the relay accepts it. Failed deliveries are retried
+ * with capped exponential backoff and jitter, and whatever is left in the spool when Jenkins stops is
+ * picked up again at the next start. Retries run on the {@link MailDeliveryQueue} workers, never on
+ * build or timer threads.
+ *
+ * <p>
+ * Only the spooled files are durable: the number of attempts made so far is kept in memory and
+ * starts over after a restart.
+ */
+@Restricted(NoExternalUse.class)
+public final class MailOutbox {
+
+    private static final Logger LOGGER = Logger.getLogger(MailOutbox.class.getName());
+
+    /** If set, undeliverable mail is dropped instead of being spooled for another attempt. */
+    static /* not final */ boolean DISABLED = Boolean.getBoolean(MailOutbox.class.getName() + ".disabled");
+    /** Milliseconds to wait before the first retry. Doubles with every further attempt. */
+    static /* not final */ long BASE_DELAY = Long.getLong(MailOutbox.class.getName() + ".baseDelay", TimeUnit.SECONDS.toMillis(30));
+    /** Maximum number of milliseconds between two attempts. */
+    static /* not final */ long MAX_DELAY = Long.getLong(MailOutbox.class.getName() + ".maxDelay", TimeUnit.HOURS.toMillis(1));
+    /** Number of attempts after which a message is moved aside as failed. */
+    static /* not final */ int MAX_ATTEMPTS = Integer.getInteger(MailOutbox.class.getName() + ".maxAttempts", 24);
+
+    private static final String SUFFIX = ".eml";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private static MailOutbox instance;
+
+    private final File dir;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    MailOutbox(@NonNull File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * @return the outbox of this Jenkins instance, or {@code null} if spooling is disabled or Jenkins is not running.
+     */
+    public static synchronized @CheckForNull MailOutbox get() {
+        if (DISABLED) {
+            return null;
+        }
+        if (instance == null) {
+            Jenkins jenkins = Jenkins.getInstanceOrNull();
+            if (jenkins == null) {
+                return null;
+            }
+            instance = new MailOutbox(new File(jenkins.getRootDir(), "mailer-outbox"));
+        }
+        return instance;
+    }
+
+    /**
+     * Writes a message to the spool and has {@link MailDeliveryQueue} deliver it.
+     * The spool file is removed once the relay accepted the message.
+     * @param msg a message which has already been saved
+     * @throws IOException if the message could not be written to disk
+     * @throws MessagingException if the message could not be serialized
+     */
+    void submit(@NonNull MimeMessage msg) throws IOException, MessagingException {
+        Entry entry = write(msg);
+        MailDeliveryQueue.get().execute(() -> attempt(entry));
+    }
+
+    /**
+     * Spools a message whose delivery just failed, to be retried later.
+     * @param msg a message which has already been saved
+     * @param cause why delivery failed
+     * @return {@code false} if the failure is permanent or the message could not be spooled
+     */
+    public boolean spool(@NonNull MimeMessage msg, @NonNull MessagingException cause) {
+        if (!isRetryable(cause) || cause instanceof SmtpCircuitBreaker.OpenException && !SmtpCircuitBreaker.SPOOL_WHEN_OPEN) {
+            return false;
+        }
+        try {
+            Entry entry = write(msg);
+            entry.message = null;
+            entry.attempts = 1;
+            schedule(entry, backoff(entry.attempts));
+            return true;
+        } catch (IOException | MessagingException e) {
+            LOGGER.log(Level.WARNING, "Failed to spool e-mail to " + dir, e);
+            return false;
+        }
+    }
+
+    /**
+     * @return number of messages in the spool which have neither been delivered nor given up on yet.
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    Entry write(MimeMessage msg) throws IOException, MessagingException {
+        Path spool = dir.toPath();
+        Files.createDirectories(spool);
+        String name = UUID.randomUUID() + SUFFIX;
+        Path tmp = spool.resolve(name + TMP_SUFFIX);
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            msg.writeTo(out);
+        }
+        Path target = spool.resolve(name);
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        pending.incrementAndGet();
+        return new Entry(target.toFile(), msg);
+    }
+
+    void attempt(Entry entry) {
+        MimeMessage msg;
+        try {
+            msg = entry.load();
+        } catch (IOException | MessagingException e) {
+            LOGGER.log(Level.WARNING, "Failed to read spooled e-mail " + entry.file, e);
+            moveToFailed(entry);
+            return;
+        }
+        try {
+            SmtpTransportPool.get().send(msg);
+            delete(entry);
+        } catch (MessagingException e) {
+            // keep only the file, the message may wait in the spool for a long time
+            entry.message = null;
+            if (e instanceof SmtpCircuitBreaker.OpenException) {
+                // the relay was not even contacted, so this does not count as an attempt
+                schedule(entry, backoff(Math.max(entry.attempts, 1)));
+                return;
+            }
+            entry.attempts++;
+            if (!isRetryable(e) || entry.attempts >= MAX_ATTEMPTS) {
+                LOGGER.log(Level.WARNING, "Giving up on e-mail " + entry.file + " after " + entry.attempts + " attempts", e);
+                moveToFailed(entry);
+            } else {
+                long delay = backoff(entry.attempts);
+                LOGGER.log(Level.INFO, "Failed to deliver e-mail {0}, will retry in {1} seconds: {2}",
+                        new Object[] {entry.file.getName(), TimeUnit.MILLISECONDS.toSeconds(delay), e.getMessage()});
+                schedule(entry, delay);
+            }
+        }
+    }
+
+    private void schedule(Entry entry, long delay) {
+        Timer.get().schedule(() -> retry(entry), delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Hands a due retry to {@link MailDeliveryQueue}. When the queue has no room for it, the retry waits for
+     * another backoff period instead of being delivered on the timer thread.
+     */
+    private void retry(Entry entry) {
+        if (!MailDeliveryQueue.get().tryExecute(() -> attempt(entry))) {
+            // not delivered, so this does not count as an attempt
+            schedule(entry, backoff(Math.max(entry.attempts, 1)));
+        }
+    }
+
+    /**
+     * Schedules everything found in the spool, typically left over from before a restart.
+     */
+    void resume() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        int count = 0;
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TMP_SUFFIX)) {
+                // the write was interrupted, so the message was never accepted for delivery
+                deleteQuietly(file.toPath());
+            } else if (file.isFile() && name.endsWith(SUFFIX)) {
+                pending.incrementAndGet();
+                // spread the restart over one base delay instead of hitting the relay with all of them at once
+                schedule(new Entry(file, null), ThreadLocalRandom.current().nextLong(BASE_DELAY + 1));
+                count++;
+            }
+        }
+        if (count > 0) {
+            LOGGER.log(Level.INFO, "Resuming delivery of {0} spooled e-mails from {1}", new Object[] {count, dir});
+        }
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void resumeSpooled() {
+        MailOutbox outbox = get();
+        if (outbox != null) {
+            outbox.resume();
+        }
+    }
+
+    /**
+     * Computes the delay before the given attempt: exponential in the number of attempts, capped
+     * at {@link #MAX_DELAY}, and randomized over the upper half so that messages which failed together
+     * are not retried together.
+     */
+    static long backoff(int attempts) {
+        long delay = BASE_DELAY << Math.min(Math.max(attempts - 1, 0), 30);
+        if (delay <= 0 || delay > MAX_DELAY) {
+            delay = MAX_DELAY;
+        }
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    /**
+     * Decides whether another attempt could succeed. Rejected recipients will be rejected again,
+     * and a message which already reached some recipients must not be sent to them twice.
+     */
+    static boolean isRetryable(MessagingException e) {
+        if (e instanceof SendFailedException) {
+            SendFailedException failed = (SendFailedException) e;
+            return isEmpty(failed.getValidSentAddresses())
+                    && isEmpty(failed.getInvalidAddresses())
+                    && !isEmpty(failed.getValidUnsentAddresses());
+        }
+        return true;
+    }
+
+    private static boolean isEmpty(Address[] addresses) {
+        return addresses == null || addresses.length == 0;
+    }
+
+    private void delete(Entry entry) {
+        deleteQuietly(entry.file.toPath());
+        pending.decrementAndGet();
+    }
+
+    private void moveToFailed(Entry entry) {
+        Path failed = dir.toPath().resolve("failed");
+        try {
+            Files.createDirectories(failed);
+            Files.move(entry.file.toPath(), failed.resolve(entry.file.getName()), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to move " + entry.file + " to " + failed, e);
+            deleteQuietly(entry.file.toPath());
+        }
+        pending.decrementAndGet();
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to delete " + file, e);
+        }
+    }
+
+    /**
+     * A spooled message.
+     */
+    static final class Entry {
+        private final File file;
+        /**
+         * The message as submitted, so the first attempt does not need to parse the file again.
+         */
+        private volatile MimeMessage message;
+        private volatile int attempts;
+
+        Entry(File file, MimeMessage message) {
+            this.file = file;
+            this.message = message;
+        }
+
+        MimeMessage load() throws IOException, MessagingException {
+            MimeMessage msg = message;
+            if (msg != null) {
+                return msg;
+            }
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                return new MimeMessage(Mailer.descriptor().getSharedSession(), in);
+            }
+        }
+
+        File getFile() {
+            return file;
+        }
+    }
+}
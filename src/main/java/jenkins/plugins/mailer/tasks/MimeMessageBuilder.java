@@ -31,6 +31,7 @@ import jenkins.model.JenkinsLocationConfiguration;
 
 import org.jenkinsci.main.modules.instance_identity.InstanceIdentity;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import jakarta.mail.Address;
 import jakarta.mail.BodyPart;
@@ -45,6 +46,7 @@ import jakarta.mail.internet.MimeMessage;
 import jakarta.mail.internet.MimeMultipart;
 import jakarta.mail.internet.MimeUtility;
 
+import java.io.File;
 import java.io.UnsupportedEncodingException;
 import java.security.interfaces.RSAPublicKey;
 import java.util.Base64;
@@ -55,6 +57,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -169,25 +172,46 @@ public class MimeMessageBuilder {
      * @throws UnsupportedEncodingException in case of encoding problems
      */
     public MimeMessageBuilder addRecipients(@NonNull String recipients, @NonNull Message.RecipientType recipientType) throws UnsupportedEncodingException {
-        StringTokenizer tokens = new StringTokenizer(recipients, " \t\n\r\f,");
-        while (tokens.hasMoreTokens()) {
-            String addressToken = tokens.nextToken();
-            InternetAddress internetAddress = toNormalizedAddress(addressToken);
-
-            if (internetAddress != null) {
-                if (recipientType == Message.RecipientType.TO) {
-                    to.add(internetAddress);
-                } else if (recipientType == Message.RecipientType.CC) {
-                    cc.add(internetAddress);
-                } else if (recipientType == Message.RecipientType.BCC) {
-                    bcc.add(internetAddress);
-                }
-            }
-        }
+        return addRecipients(toNormalizedAddresses(recipients), recipientType);
+    }
+
+    /**
+     * Adds recipients which were already parsed, for example with {@link #toAddresses(String)}.
+     * @param recipients one or more recipients, duplicates being added only once
+     * @return the constructed message with the given recipients
+     */
+    public MimeMessageBuilder addRecipients(@NonNull Collection<InternetAddress> recipients) {
+        return addRecipients(recipients, Message.RecipientType.TO);
+    }
 
+    /**
+     * Adds recipients which were already parsed, for example with {@link #toAddresses(String)}.
+     * @param recipients one or more recipients, duplicates being added only once
+     * @param recipientType recipient type
+     * @return the constructed message with the given recipients
+     */
+    public MimeMessageBuilder addRecipients(@NonNull Collection<InternetAddress> recipients, @NonNull Message.RecipientType recipientType) {
+        if (recipientType == Message.RecipientType.TO) {
+            to.addAll(recipients);
+        } else if (recipientType == Message.RecipientType.CC) {
+            cc.addAll(recipients);
+        } else if (recipientType == Message.RecipientType.BCC) {
+            bcc.addAll(recipients);
+        }
         return this;
     }
 
+    /**
+     * Parses recipients the way {@link #addRecipients(String)} does, with the charset and default suffix of this builder,
+     * so that they can be collected before being added.
+     * @param addresses addresses separated by commas or whitespace
+     * @return the valid addresses in order, without duplicates
+     * @throws UnsupportedEncodingException in case of encoding problems
+     */
+    public @NonNull Set<InternetAddress> toAddresses(@CheckForNull String addresses) throws UnsupportedEncodingException {
+        return new LinkedHashSet<>(toNormalizedAddresses(addresses));
+    }
+
     /**
      * Build a {@link MimeMessage} instance from the set of supplied parameters.
      * @return The {@link MimeMessage} instance;
@@ -195,7 +219,7 @@ public class MimeMessageBuilder {
      * @throws UnsupportedEncodingException in case of encoding problems
      */
     public MimeMessage buildMimeMessage() throws MessagingException, UnsupportedEncodingException {
-        MimeMessage msg = new MimeMessage(Mailer.descriptor().createSession());
+        MimeMessage msg = new MimeMessage(Mailer.descriptor().getSharedSession());
 
         setJenkinsInstanceIdent(msg);
 
@@ -216,17 +240,56 @@ public class MimeMessageBuilder {
     }
 
     private void setJenkinsInstanceIdent(MimeMessage msg) throws MessagingException {
-        if (Jenkins.getInstanceOrNull() != null) {
-            String encodedIdentity;
-            try {
-                RSAPublicKey publicKey = InstanceIdentity.get().getPublic();
-                encodedIdentity = Base64.getEncoder().encodeToString(publicKey.getEncoded());
-            } catch (Throwable t) {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins != null) {
+            InstanceIdent ident = InstanceIdent.of(jenkins);
+            if (ident.encoded == null) {
                 // Ignore. Just don't add the identity header.
-                 logError("Failed to set Jenkins Identity header on email.", t);
+                if (ident.reported.compareAndSet(false, true)) {
+                    logError("Failed to set Jenkins Identity header on email.", ident.failure);
+                }
                 return;
             }
-            msg.setHeader("X-Instance-Identity", encodedIdentity);
+            msg.setHeader("X-Instance-Identity", ident.encoded);
+        }
+    }
+
+    /**
+     * The encoded public key of a Jenkins instance, which does not change while it runs, or why it could not
+     * be read, which is then reported once rather than for every message.
+     */
+    private static final class InstanceIdent {
+        private static volatile InstanceIdent current;
+
+        private final File rootDir;
+        private final String encoded;
+        private final Throwable failure;
+        private final AtomicBoolean reported = new AtomicBoolean();
+
+        private InstanceIdent(File rootDir, String encoded, Throwable failure) {
+            this.rootDir = rootDir;
+            this.encoded = encoded;
+            this.failure = failure;
+        }
+
+        static InstanceIdent of(Jenkins jenkins) {
+            File rootDir = jenkins.getRootDir();
+            InstanceIdent ident = current;
+            if (ident == null || !ident.rootDir.equals(rootDir)) {
+                synchronized (InstanceIdent.class) {
+                    ident = current;
+                    if (ident == null || !ident.rootDir.equals(rootDir)) {
+                        try {
+                            RSAPublicKey publicKey = InstanceIdentity.get().getPublic();
+                            ident = new InstanceIdent(rootDir, Base64.getEncoder().encodeToString(publicKey.getEncoded()), null);
+                        } catch (Throwable t) {
+                            ident = new InstanceIdent(rootDir, null, t);
+                        }
+                        current = ident;
+                    }
+                }
+            }
+            return ident;
         }
     }
 
@@ -303,20 +366,11 @@ public class MimeMessageBuilder {
             return null;
         }
 
-        // if not a valid address (i.e. no '@'), then try adding suffix
-        if (!address.contains("@")) {
-            if (defaultSuffix != null && defaultSuffix.contains("@")) {
-                address += defaultSuffix;
-            } else {
-                return null;
-            }
-        }
-
         try {
-            return Mailer.stringToAddress(address, charset);
+            return AddressCache.get().parse(address, charset, defaultSuffix);
         } catch (AddressException e) {
             // report bad address, but try to send to other addresses
-            logError("Unable to send to address: " + address, e);
+            logError("Unable to send to address: " + AddressCache.withDefaultSuffix(address, defaultSuffix), e);
             return null;
         }
     }
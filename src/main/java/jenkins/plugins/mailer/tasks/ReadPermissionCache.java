@@ -0,0 +1,259 @@
+package jenkins.plugins.mailer.tasks;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.AbstractBuild;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Saveable;
+import hudson.model.User;
+import hudson.model.listeners.SaveableListener;
+import jenkins.model.Jenkins;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers whether a user may read a job, so that culprits are not impersonated again for every mail.
+ *
+ * <p>
+ * {@link User#impersonate2()} can be a round trip to the user directory, and a mail including upstream culprits
+ * asks for every upstream build. Decisions, including users not being found, are kept for {@link #TTL} milliseconds
+ * in a map of at most {@link #MAX_ENTRIES} entries, least recently used first out. All of them are dropped as soon
+ * as the security realm or the authorization strategy is replaced or the global configuration is saved, which
+ * covers changes made in place to the permissions of a strategy, and those of a user or a job as soon as
+ * it is saved, since its configuration may grant or revoke permissions. Other changes, such as the groups of
+ * a user in an external directory, may take up to the TTL to apply.
+ */
+@Restricted(NoExternalUse.class)
+public final class ReadPermissionCache {
+
+    /** Maximum number of (user, job) decisions kept. */
+    static /* not final */ int MAX_ENTRIES = Integer.getInteger(ReadPermissionCache.class.getName() + ".maxEntries", 1000);
+    /** Milliseconds a decision is kept, {@code 0} to disable the cache. */
+    static /* not final */ long TTL = Long.getLong(ReadPermissionCache.class.getName() + ".ttl", TimeUnit.MINUTES.toMillis(1));
+
+    private static final ReadPermissionCache INSTANCE = new ReadPermissionCache(System::currentTimeMillis);
+
+    public enum Outcome {
+        /** The user may read the job. */
+        GRANTED,
+        /** The user exists but may not read the job. */
+        DENIED,
+        /** The user is not known to the security realm. */
+        UNKNOWN_USER,
+        /** The user could not be impersonated for another reason. */
+        UNAUTHORIZED
+    }
+
+    /**
+     * Whether a user may read a job.
+     */
+    public static final class Decision {
+        private static final Decision GRANTED = new Decision(Outcome.GRANTED, null);
+        private static final Decision DENIED = new Decision(Outcome.DENIED, null);
+        private static final Decision UNKNOWN_USER = new Decision(Outcome.UNKNOWN_USER, null);
+
+        private final Outcome outcome;
+        private final String message;
+
+        private Decision(Outcome outcome, String message) {
+            this.outcome = outcome;
+            this.message = message;
+        }
+
+        public @NonNull Outcome getOutcome() {
+            return outcome;
+        }
+
+        /**
+         * @return why the user could not be impersonated, for {@link Outcome#UNAUTHORIZED}.
+         */
+        public @CheckForNull String getMessage() {
+            return message;
+        }
+    }
+
+    private final LongSupplier clock;
+
+    // guarded by this
+    private final Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private Object securityRealm;
+    private Object authorizationStrategy;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    ReadPermissionCache(@NonNull LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    public static @NonNull ReadPermissionCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Decides whether a user may read the job of a build, impersonating the user unless the decision is cached.
+     */
+    public @NonNull Decision check(@NonNull User user, @NonNull AbstractBuild<?, ?> build) {
+        String userId = user.getId();
+        Job<?, ?> job = build.getParent();
+        if (TTL <= 0 || userId == null || job == null) {
+            return decide(user, build);
+        }
+        Jenkins jenkins = Jenkins.get();
+        Object realm = jenkins.getSecurityRealm();
+        Object strategy = jenkins.getAuthorizationStrategy();
+        Key key = new Key(userId, job.getFullName());
+        long now = clock.getAsLong();
+        synchronized (this) {
+            if (realm != securityRealm || strategy != authorizationStrategy) {
+                entries.clear();
+                securityRealm = realm;
+                authorizationStrategy = strategy;
+            }
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expires > now) {
+                hits.incrementAndGet();
+                return entry.decision;
+            }
+        }
+        misses.incrementAndGet();
+        Decision decision = decide(user, build);
+        synchronized (this) {
+            // not if the security configuration changed while deciding
+            if (realm == securityRealm && strategy == authorizationStrategy) {
+                entries.put(key, new Entry(decision, now + TTL));
+            }
+        }
+        return decision;
+    }
+
+    private static Decision decide(User user, AbstractBuild<?, ?> build) {
+        try {
+            Authentication auth = user.impersonate2();
+            return build.getACL().hasPermission2(auth, Item.READ) ? Decision.GRANTED : Decision.DENIED;
+        } catch (UsernameNotFoundException x) {
+            return Decision.UNKNOWN_USER;
+        } catch (AuthenticationException e) {
+            return new Decision(Outcome.UNAUTHORIZED, e.getMessage());
+        }
+    }
+
+    /**
+     * Drops the decisions about a user.
+     */
+    public synchronized void invalidateUser(@NonNull String userId) {
+        entries.keySet().removeIf(key -> key.user.equals(userId));
+    }
+
+    /**
+     * Drops the decisions about an item and, for a folder, about the jobs in it.
+     * @param fullName full name of the item
+     */
+    public synchronized void invalidateItem(@NonNull String fullName) {
+        String prefix = fullName + "/";
+        entries.keySet().removeIf(key -> key.job.equals(fullName) || key.job.startsWith(prefix));
+    }
+
+    /**
+     * Drops all decisions.
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * @return number of decisions answered from the cache.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of decisions which needed the user to be impersonated.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Forgets the decisions about a user or an item once it is saved, and all of them once the global configuration is.
+     */
+    @Extension
+    @Restricted(NoExternalUse.class)
+    public static final class Invalidator extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof Jenkins) {
+                get().invalidateAll();
+            } else if (o instanceof User) {
+                get().invalidateUser(((User) o).getId());
+            } else if (o instanceof Item) {
+                get().invalidateItem(((Item) o).getFullName());
+            }
+        }
+
+        @Override
+        public void onDeleted(Saveable o, XmlFile file) {
+            onChange(o, file);
+        }
+    }
+
+    private static final class Key {
+        private final String user;
+        private final String job;
+
+        Key(String user, String job) {
+            this.user = user;
+            this.job = job;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return user.equals(that.user) && job.equals(that.job);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(user, job);
+        }
+    }
+
+    private static final class Entry {
+        private final Decision decision;
+        private final long expires;
+
+        Entry(Decision decision, long expires) {
+            this.decision = decision;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package jenkins.plugins.mailer.tasks;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.User;
+import hudson.model.listeners.SaveableListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.tasks.MailAddressResolver;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.springframework.security.core.Authentication;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Remembers what the {@link MailAddressResolver} extensions answered for a user.
+ *
+ * <p>
+ * Resolvers may ask an SCM server or a directory, so their answers are kept for {@link #TTL} milliseconds.
+ * Users no resolver knows an address for are remembered separately, for {@link #NEGATIVE_TTL} milliseconds,
+ * so that they do not cost a round of queries on every build either. At most {@link #MAX_ENTRIES} users are
+ * remembered, least recently used first out, and a user is forgotten as soon as it is saved, for example
+ * because its {@link hudson.tasks.Mailer.UserProperty} changed.
+ *
+ * <p>
+ * Addresses found are also written to the {@link ResolvedAddressIndex}. A user missing here but found in the
+ * index, typically after a restart, gets the indexed address right away while the resolvers are asked again
+ * in the background. Addresses found are also recorded in the {@link UserAddressIndex}.
+ *
+ * <p>
+ * These refreshes run on at most {@link #REFRESH_THREADS} threads of their own, since resolvers may be slow,
+ * and a user already being refreshed is not refreshed again in the meantime. When too many refreshes are
+ * waiting, further ones are dropped, to be tried again the next time the address is checked.
+ */
+@Restricted(NoExternalUse.class)
+public final class ResolvedAddressCache {
+
+    private static final Logger LOGGER = Logger.getLogger(ResolvedAddressCache.class.getName());
+
+    /** Milliseconds an address found by a resolver is kept, {@code 0} to disable the cache. */
+    static /* not final */ long TTL = Long.getLong(ResolvedAddressCache.class.getName() + ".ttl", TimeUnit.MINUTES.toMillis(30));
+    /** Milliseconds it is kept that no resolver found an address, {@code 0} to always ask again. */
+    static /* not final */ long NEGATIVE_TTL = Long.getLong(ResolvedAddressCache.class.getName() + ".negativeTtl", TimeUnit.MINUTES.toMillis(5));
+    /** Maximum number of users remembered. */
+    static /* not final */ int MAX_ENTRIES = Integer.getInteger(ResolvedAddressCache.class.getName() + ".maxEntries", 10000);
+    /** Number of threads refreshing indexed addresses in the background. */
+    static /* not final */ int REFRESH_THREADS = Integer.getInteger(ResolvedAddressCache.class.getName() + ".refreshThreads", 2);
+    /** Number of refreshes which may wait for a thread. */
+    private static final int REFRESH_QUEUE = 1000;
+
+    private static final ResolvedAddressCache INSTANCE = new ResolvedAddressCache(System::currentTimeMillis,
+            ResolvedAddressIndex::get, refreshExecutor());
+
+    private final LongSupplier clock;
+    private final Supplier<ResolvedAddressIndex> index;
+    private final Executor background;
+
+    // guarded by itself
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    /** Users whose indexed address is being checked in the background. */
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    ResolvedAddressCache(@NonNull LongSupplier clock) {
+        this(clock, () -> null, Runnable::run);
+    }
+
+    ResolvedAddressCache(@NonNull LongSupplier clock, @NonNull Supplier<ResolvedAddressIndex> index, @NonNull Executor background) {
+        this.clock = clock;
+        this.index = index;
+        this.background = background;
+    }
+
+    public static @NonNull ResolvedAddressCache get() {
+        return INSTANCE;
+    }
+
+    private static Executor refreshExecutor() {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(REFRESH_QUEUE),
+                new NamingThreadFactory(new DaemonThreadFactory(), "ResolvedAddressCache refresh"));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * An address found by a resolver.
+     */
+    public static final class Resolution {
+        private final String address;
+        private final String resolver;
+
+        /**
+         * @param address the address found
+         * @param resolver the resolver which found it
+         */
+        public Resolution(@NonNull String address, @NonNull MailAddressResolver resolver) {
+            this.address = address;
+            this.resolver = resolver.getClass().getName();
+        }
+
+        public @NonNull String getAddress() {
+            return address;
+        }
+
+        /**
+         * @return class name of the resolver which found the address.
+         */
+        public @NonNull String getResolver() {
+            return resolver;
+        }
+    }
+
+    /**
+     * Gets the address remembered for a user, resolving it if it is not known or has expired.
+     * @param userId id of the user
+     * @param resolver asks the resolvers, returning {@code null} if none found an address
+     * @return the address, or {@code null} if no resolver found one
+     */
+    public @CheckForNull String resolve(@CheckForNull String userId, @NonNull Supplier<Resolution> resolver) {
+        if (userId == null || (TTL <= 0 && NEGATIVE_TTL <= 0)) {
+            Resolution resolution = resolver.get();
+            return resolution != null ? resolution.address : null;
+        }
+        long now = clock.getAsLong();
+        synchronized (entries) {
+            Entry entry = entries.get(userId);
+            if (entry != null && entry.expires > now) {
+                return entry.address;
+            }
+        }
+        ResolvedAddressIndex idx = index.get();
+        ResolvedAddressIndex.Record indexed = idx != null ? idx.lookup(userId) : null;
+        if (indexed != null) {
+            remember(userId, indexed.getAddress(), now);
+            if (refreshing.add(userId)) {
+                refresh(Collections.singletonList(userId), () -> {
+                    Resolution resolution = resolver.get();
+                    store(userId, resolution, clock.getAsLong());
+                });
+            }
+            return indexed.getAddress();
+        }
+        Resolution resolution = resolver.get();
+        store(userId, resolution, now);
+        return resolution != null ? resolution.address : null;
+    }
+
+    /**
+     * Gets the addresses remembered for several users, resolving the others at once.
+     * @param users the users
+     * @param id gets the id of a user
+     * @param resolver asks the resolvers for the addresses of the given users, leaving out those none found an address for
+     * @return the addresses of the users which have one
+     */
+    public @NonNull <U> Map<U, String> resolveAll(@NonNull Collection<U> users, @NonNull Function<U, String> id,
+                                                  @NonNull Function<Collection<U>, Map<U, Resolution>> resolver) {
+        Map<U, String> addresses = new HashMap<>();
+        if (TTL <= 0 && NEGATIVE_TTL <= 0) {
+            resolver.apply(users).forEach((u, resolution) -> addresses.put(u, resolution.address));
+            return addresses;
+        }
+        long now = clock.getAsLong();
+        List<U> unknown = new ArrayList<>();
+        synchronized (entries) {
+            for (U u : users) {
+                String userId = id.apply(u);
+                Entry entry = userId != null ? entries.get(userId) : null;
+                if (entry != null && entry.expires > now) {
+                    if (entry.address != null) {
+                        addresses.put(u, entry.address);
+                    }
+                } else {
+                    unknown.add(u);
+                }
+            }
+        }
+        if (unknown.isEmpty()) {
+            return addresses;
+        }
+
+        ResolvedAddressIndex idx = index.get();
+        if (idx != null) {
+            List<U> indexed = new ArrayList<>();
+            List<String> indexedIds = new ArrayList<>();
+            for (Iterator<U> it = unknown.iterator(); it.hasNext(); ) {
+                U u = it.next();
+                String userId = id.apply(u);
+                ResolvedAddressIndex.Record record = userId != null ? idx.lookup(userId) : null;
+                if (record != null) {
+                    remember(userId, record.getAddress(), now);
+                    addresses.put(u, record.getAddress());
+                    it.remove();
+                    if (refreshing.add(userId)) {
+                        indexed.add(u);
+                        indexedIds.add(userId);
+                    }
+                }
+            }
+            if (!indexed.isEmpty()) {
+                refresh(indexedIds, () -> store(indexed, id, resolver.apply(indexed), clock.getAsLong()));
+            }
+        }
+        if (!unknown.isEmpty()) {
+            Map<U, Resolution> resolved = resolver.apply(unknown);
+            store(unknown, id, resolved, now);
+            resolved.forEach((u, resolution) -> addresses.put(u, resolution.address));
+        }
+        return addresses;
+    }
+
+    private <U> void store(List<U> users, Function<U, String> id, Map<U, Resolution> resolved, long now) {
+        for (U u : users) {
+            String userId = id.apply(u);
+            if (userId != null) {
+                store(userId, resolved.get(u), now);
+            }
+        }
+    }
+
+    private void store(String userId, @CheckForNull Resolution resolution, long now) {
+        long ttl = resolution != null ? TTL : NEGATIVE_TTL;
+        if (ttl > 0) {
+            synchronized (entries) {
+                entries.put(userId, new Entry(resolution != null ? resolution.address : null, now + ttl));
+            }
+        }
+        UserAddressIndex.get().resolved(userId, resolution != null ? resolution.address : null);
+        ResolvedAddressIndex idx = index.get();
+        if (idx != null) {
+            if (resolution != null) {
+                idx.put(userId, resolution.address, resolution.resolver, now);
+            } else {
+                idx.remove(userId);
+            }
+        }
+    }
+
+    /**
+     * Keeps an indexed address for as long as one found just now, so that it is not checked again before.
+     */
+    private void remember(String userId, String address, long now) {
+        synchronized (entries) {
+            entries.put(userId, new Entry(address, now + Math.max(TTL, NEGATIVE_TTL)));
+        }
+    }
+
+    /**
+     * Asks the resolvers again in the background.
+     * @param userIds users being refreshed, already added to {@link #refreshing} and removed once done
+     */
+    private void refresh(Collection<String> userIds, Runnable task) {
+        Authentication auth = Jenkins.getAuthentication2();
+        try {
+            background.execute(() -> {
+                try (ACLContext ctx = ACL.as2(auth)) {
+                    task.run();
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Failed to refresh e-mail addresses", e);
+                } finally {
+                    refreshing.removeAll(userIds);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.removeAll(userIds);
+            LOGGER.log(Level.FINE, "Too many e-mail addresses being refreshed, not refreshing {0}", userIds);
+        }
+    }
+
+    /**
+     * Forgets the address of a user.
+     */
+    public void invalidate(@NonNull String userId) {
+        synchronized (entries) {
+            entries.remove(userId);
+        }
+        ResolvedAddressIndex idx = index.get();
+        if (idx != null) {
+            idx.remove(userId);
+        }
+    }
+
+    /**
+     * Forgets all addresses.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        ResolvedAddressIndex idx = index.get();
+        if (idx != null) {
+            idx.clear();
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static final class Entry {
+        /** {@code null} if no resolver found an address. */
+        private final String address;
+        private final long expires;
+
+        Entry(String address, long expires) {
+            this.address = address;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * Forgets the address of a user once the user is saved, properties included.
+     */
+    @Extension
+    @Restricted(NoExternalUse.class)
+    public static final class Invalidator extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof User) {
+                get().invalidate(((User) o).getId());
+            }
+        }
+
+        @Override
+        public void onDeleted(Saveable o, XmlFile file) {
+            onChange(o, file);
+        }
+    }
+}
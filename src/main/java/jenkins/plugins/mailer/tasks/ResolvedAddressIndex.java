@@ -0,0 +1,270 @@
+package jenkins.plugins.mailer.tasks;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.XmlFile;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import hudson.tasks.MailAddressResolver;
+import hudson.util.XStream2;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * File under {@code JENKINS_HOME} listing the addresses {@link MailAddressResolver} extensions found for users.
+ *
+ * <p>
+ * Each record holds the user id, the address, the resolver which found it and when. The file is read in the
+ * background once Jenkins has started, so that the {@link ResolvedAddressCache} does not start cold after a
+ * restart, and written a little after records changed and when Jenkins stops. Records older than
+ * {@link #MAX_AGE} milliseconds are ignored; they are meant to warm up the cache, not to replace the resolvers.
+ */
+@Restricted(NoExternalUse.class)
+public final class ResolvedAddressIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(ResolvedAddressIndex.class.getName());
+
+    /** If set, resolved addresses are not written to disk. */
+    static /* not final */ boolean DISABLED = Boolean.getBoolean(ResolvedAddressIndex.class.getName() + ".disabled");
+    /** Milliseconds after which a record is no longer used. */
+    static /* not final */ long MAX_AGE = Long.getLong(ResolvedAddressIndex.class.getName() + ".maxAge", TimeUnit.DAYS.toMillis(7));
+    /** Milliseconds changes are collected before the file is written. */
+    static /* not final */ long SAVE_DELAY = Long.getLong(ResolvedAddressIndex.class.getName() + ".saveDelay", TimeUnit.MINUTES.toMillis(1));
+
+    private static final XStream2 XSTREAM = new XStream2();
+
+    static {
+        XSTREAM.alias("resolvedAddress", Record.class);
+    }
+
+    private static ResolvedAddressIndex instance;
+
+    private final XmlFile file;
+    private final LongSupplier clock;
+    private final ConcurrentMap<String, Record> records = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+    /** Users forgotten before the file was read, whose records in it are out of date. */
+    private final Set<String> removedBeforeLoad = ConcurrentHashMap.newKeySet();
+    private volatile boolean clearedBeforeLoad;
+    private final AtomicBoolean saveScheduled = new AtomicBoolean();
+
+    ResolvedAddressIndex(@NonNull File file, @NonNull LongSupplier clock) {
+        this.file = new XmlFile(XSTREAM, file);
+        this.clock = clock;
+    }
+
+    /**
+     * @return the index of this Jenkins instance, or {@code null} if it is disabled or Jenkins is not running.
+     */
+    public static synchronized @CheckForNull ResolvedAddressIndex get() {
+        if (DISABLED) {
+            return null;
+        }
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            return null;
+        }
+        File file = new File(jenkins.getRootDir(), "mailer-resolved-addresses.xml");
+        if (instance == null || !instance.file.getFile().equals(file)) {
+            instance = new ResolvedAddressIndex(file, System::currentTimeMillis);
+        }
+        return instance;
+    }
+
+    /**
+     * An address found for a user.
+     */
+    public static final class Record {
+        private final String userId;
+        private final String address;
+        private final String resolver;
+        private final long timestamp;
+
+        Record(String userId, String address, String resolver, long timestamp) {
+            this.userId = userId;
+            this.address = address;
+            this.resolver = resolver;
+            this.timestamp = timestamp;
+        }
+
+        public @NonNull String getUserId() {
+            return userId;
+        }
+
+        public @NonNull String getAddress() {
+            return address;
+        }
+
+        /**
+         * @return class name of the resolver which found the address.
+         */
+        public @NonNull String getResolver() {
+            return resolver;
+        }
+
+        /**
+         * @return when the address was found, in milliseconds since the epoch.
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+
+    /**
+     * @return the record of a user, or {@code null} if there is none, it is too old or the index is not loaded yet.
+     */
+    public @CheckForNull Record lookup(@NonNull String userId) {
+        if (!loaded) {
+            return null;
+        }
+        Record record = records.get(userId);
+        if (record == null || clock.getAsLong() - record.timestamp > MAX_AGE) {
+            return null;
+        }
+        return record;
+    }
+
+    /**
+     * @return all records, whether or not they are too old.
+     */
+    public @NonNull List<Record> getRecords() {
+        return new ArrayList<>(records.values());
+    }
+
+    void put(@NonNull String userId, @NonNull String address, @NonNull String resolver, long timestamp) {
+        Record previous = records.put(userId, new Record(userId, address, resolver, timestamp));
+        if (previous == null || !previous.address.equals(address) || !previous.resolver.equals(resolver)
+                || timestamp - previous.timestamp > MAX_AGE / 2) {
+            scheduleSave();
+        }
+    }
+
+    void remove(@NonNull String userId) {
+        if (!loaded) {
+            removedBeforeLoad.add(userId);
+        }
+        if (records.remove(userId) != null) {
+            scheduleSave();
+        }
+    }
+
+    void clear() {
+        if (!loaded) {
+            clearedBeforeLoad = true;
+        }
+        if (!records.isEmpty()) {
+            records.clear();
+            scheduleSave();
+        }
+    }
+
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Reads the file. Records put in the meantime are more recent and are kept.
+     */
+    void load() throws IOException {
+        try {
+            if (!file.exists()) {
+                return; // nothing resolved yet
+            }
+            Object read = file.read();
+            if (!(read instanceof List)) {
+                LOGGER.log(Level.WARNING, "Ignoring {0}, which does not list resolved addresses", file);
+                return;
+            }
+            long now = clock.getAsLong();
+            for (Object o : (List<?>) read) {
+                if (!(o instanceof Record)) {
+                    continue;
+                }
+                Record record = (Record) o;
+                if (record.userId != null && record.address != null && record.resolver != null
+                        && now - record.timestamp <= MAX_AGE && !clearedBeforeLoad && !removedBeforeLoad.contains(record.userId)) {
+                    records.putIfAbsent(record.userId, record);
+                }
+            }
+        } finally {
+            loaded = true;
+            removedBeforeLoad.clear();
+        }
+    }
+
+    /**
+     * Writes the file, replacing it at once.
+     */
+    synchronized void save() throws IOException {
+        saveScheduled.set(false);
+        file.write(getRecords());
+    }
+
+    private void scheduleSave() {
+        if (saveScheduled.compareAndSet(false, true)) {
+            Timer.get().schedule(this::saveQuietly, SAVE_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void loadQuietly() {
+        try {
+            load();
+            UserAddressIndex users = UserAddressIndex.get();
+            for (Record record : records.values()) {
+                users.resolved(record.userId, record.address);
+            }
+            LOGGER.log(Level.FINE, "Loaded {0} resolved e-mail addresses from {1}", new Object[] {records.size(), file});
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to load resolved e-mail addresses from " + file, e);
+        }
+    }
+
+    private void saveQuietly() {
+        if (!loaded) {
+            // do not overwrite records which were not read yet
+            saveScheduled.set(false);
+            scheduleSave();
+            return;
+        }
+        try {
+            save();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save resolved e-mail addresses to " + file, e);
+        }
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void loadInBackground() {
+        ResolvedAddressIndex index = get();
+        if (index != null) {
+            Timer.get().submit(index::loadQuietly);
+        }
+    }
+
+    @Terminator
+    public static void saveOnShutdown() {
+        ResolvedAddressIndex index;
+        synchronized (ResolvedAddressIndex.class) {
+            index = instance;
+        }
+        if (index != null && index.saveScheduled.get()) {
+            index.saveQuietly();
+        }
+    }
+}
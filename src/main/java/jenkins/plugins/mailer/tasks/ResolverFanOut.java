@@ -0,0 +1,262 @@
+package jenkins.plugins.mailer.tasks;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.User;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.tasks.MailAddressResolver;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.springframework.security.core.Authentication;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Asks all {@link MailAddressResolver} extensions for the address of a user, or a batch of users, at the same time.
+ *
+ * <p>
+ * The answers are still taken in extension order: as soon as a resolver found an address and all resolvers
+ * before it found none, the others are cancelled. Resolvers which did not answer within {@link #DEADLINE}
+ * milliseconds are cancelled as well, and the first address among the answers which did arrive is taken.
+ * Only used if {@link #ENABLED}, since resolvers may not expect to be called concurrently for the same user.
+ *
+ * <p>
+ * Every lookup gets a thread of its own, so a resolver which hangs cannot hold up the others. A resolver
+ * ignoring the interrupt keeps its thread though, so it is asked for at most {@link #MAX_IN_FLIGHT}
+ * lookups at the same time and skipped while it is busy with that many.
+ */
+@Restricted(NoExternalUse.class)
+public final class ResolverFanOut {
+
+    private static final Logger LOGGER = Logger.getLogger(ResolverFanOut.class.getName());
+
+    /** If set, resolvers are asked concurrently. */
+    static /* not final */ boolean ENABLED = Boolean.getBoolean(ResolverFanOut.class.getName() + ".enabled");
+    /** Milliseconds to wait for resolvers to find the address of a user. */
+    static /* not final */ long DEADLINE = Long.getLong(ResolverFanOut.class.getName() + ".deadline", TimeUnit.SECONDS.toMillis(10));
+    /** Number of lookups one resolver may be running at the same time. */
+    static /* not final */ int MAX_IN_FLIGHT = Integer.getInteger(ResolverFanOut.class.getName() + ".maxInFlight", 8);
+
+    private static ExecutorService executor;
+
+    /** Lookups each resolver may still start. */
+    private static final Map<MailAddressResolver, Semaphore> IN_FLIGHT = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private ResolverFanOut() {
+    }
+
+    /**
+     * @return whether resolvers are to be asked concurrently.
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    private static synchronized ExecutorService executor() {
+        if (executor == null) {
+            // never queues, the number of threads is bounded by MAX_IN_FLIGHT per resolver instead
+            executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<>(),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "MailAddressResolver"));
+        }
+        return executor;
+    }
+
+    /**
+     * Asks the resolvers for the address of a user.
+     * @param resolvers resolvers in order of priority
+     * @return the address found by the first resolver in order which found one in time, or {@code null}
+     */
+    public static @CheckForNull ResolvedAddressCache.Resolution resolve(@NonNull Iterable<? extends MailAddressResolver> resolvers, @NonNull User u) {
+        return resolve(executor(), resolvers, u, DEADLINE);
+    }
+
+    /**
+     * @param executor must start every task right away, rather than queueing it
+     */
+    static @CheckForNull ResolvedAddressCache.Resolution resolve(@NonNull ExecutorService executor, @NonNull Iterable<? extends MailAddressResolver> resolvers,
+                                        @NonNull User u, long deadline) {
+        Authentication auth = Jenkins.getAuthentication2();
+        List<MailAddressResolver> started = new ArrayList<>();
+        List<Future<String>> answers = new ArrayList<>();
+        for (MailAddressResolver r : resolvers) {
+            Future<String> answer = submit(executor, r, u, deadline, () -> {
+                try (ACLContext ctx = ACL.as2(auth)) {
+                    return r.findMailAddressFor(u);
+                }
+            });
+            if (answer != null) {
+                started.add(r);
+                answers.add(answer);
+            }
+        }
+
+        ResolvedAddressCache.Resolution[] found = new ResolvedAddressCache.Resolution[1];
+        collect(started, answers, u, deadline, (r, email) -> {
+            if (email == null) {
+                return false;
+            }
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine(r + " resolved " + u.getId() + " to " + email);
+            }
+            found[0] = new ResolvedAddressCache.Resolution(email, r);
+            return true;
+        });
+        return found[0];
+    }
+
+    /**
+     * Asks the resolvers for the addresses of several users, each resolver with a single
+     * {@link MailAddressResolver#findMailAddressesFor(java.util.Collection) batch} for all of them.
+     * Since the resolvers are asked at the same time, every one of them gets all users, not only those
+     * the resolvers before it found no address for; the address of a user is still taken from the first
+     * resolver in order which found one in time. All batches share one deadline.
+     * @param resolvers resolvers in order of priority
+     * @return the addresses found
+     */
+    public static @NonNull Map<User, ResolvedAddressCache.Resolution> resolveAll(@NonNull Iterable<? extends MailAddressResolver> resolvers,
+                                                                                @NonNull Collection<User> users) {
+        return resolveAll(executor(), resolvers, users, DEADLINE);
+    }
+
+    static @NonNull Map<User, ResolvedAddressCache.Resolution> resolveAll(@NonNull ExecutorService executor, @NonNull Iterable<? extends MailAddressResolver> resolvers,
+                                                                         @NonNull Collection<User> users, long deadline) {
+        Authentication auth = Jenkins.getAuthentication2();
+        List<User> batch = Collections.unmodifiableList(new ArrayList<>(users));
+        String what = batch.size() + " users";
+        List<MailAddressResolver> started = new ArrayList<>();
+        List<Future<Map<User, String>>> answers = new ArrayList<>();
+        for (MailAddressResolver r : resolvers) {
+            Future<Map<User, String>> answer = submit(executor, r, what, deadline, () -> {
+                try (ACLContext ctx = ACL.as2(auth)) {
+                    return r.findMailAddressesFor(batch);
+                }
+            });
+            if (answer != null) {
+                started.add(r);
+                answers.add(answer);
+            }
+        }
+
+        Map<User, ResolvedAddressCache.Resolution> found = new HashMap<>();
+        Set<User> remaining = new HashSet<>(batch);
+        collect(started, answers, what, deadline, (r, addresses) -> {
+            for (Map.Entry<User, String> address : addresses.entrySet()) {
+                if (address.getValue() != null && remaining.remove(address.getKey())) {
+                    if (LOGGER.isLoggable(Level.FINE)) {
+                        LOGGER.fine(r + " resolved " + address.getKey().getId() + " to " + address.getValue());
+                    }
+                    found.put(address.getKey(), new ResolvedAddressCache.Resolution(address.getValue(), r));
+                }
+            }
+            return remaining.isEmpty();
+        });
+        return found;
+    }
+
+    private interface Collector<T> {
+        /**
+         * @return whether no further answers are needed
+         */
+        boolean take(MailAddressResolver r, T answer);
+    }
+
+    /**
+     * Takes the answers in the order of the resolvers until the collector has what it needs, waiting for them
+     * until the deadline and taking only those which are there already after it. Then cancels all lookups.
+     */
+    private static <T> void collect(List<MailAddressResolver> started, List<Future<T>> answers, Object what, long deadline,
+                                    Collector<T> collector) {
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadline);
+        boolean late = false;
+        try {
+            for (int i = 0; i < answers.size(); i++) {
+                MailAddressResolver r = started.get(i);
+                Future<T> answer = answers.get(i);
+                T value;
+                try {
+                    if (late) {
+                        // past the deadline, only take what is there already
+                        if (!answer.isDone()) {
+                            continue;
+                        }
+                        value = answer.get();
+                    } else {
+                        value = answer.get(Math.max(0, end - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    }
+                } catch (TimeoutException e) {
+                    LOGGER.log(Level.WARNING, "{0} did not resolve {1} within {2} ms. Ignoring and moving on",
+                            new Object[] {r, what, deadline});
+                    late = true;
+                    continue;
+                } catch (ExecutionException e) {
+                    LOGGER.log(Level.WARNING, r + " failed to resolve " + what + ". Ignoring and moving on", e.getCause());
+                    continue;
+                }
+                if (value != null && collector.take(r, value)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Future<T> answer : answers) {
+                answer.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Starts a lookup of a resolver unless it is busy with {@link #MAX_IN_FLIGHT} lookups already.
+     * @return the answer to come, or {@code null} if the resolver is skipped
+     */
+    private static @CheckForNull <T> Future<T> submit(ExecutorService executor, MailAddressResolver r, Object what, long deadline, Callable<T> lookup) {
+        Semaphore permits = IN_FLIGHT.computeIfAbsent(r, k -> new Semaphore(MAX_IN_FLIGHT));
+        if (!permits.tryAcquire()) {
+            LOGGER.log(Level.WARNING, "{0} is still busy with {1} lookups, probably hanging. Not asking it for {2}",
+                    new Object[] {r, MAX_IN_FLIGHT, what});
+            return null;
+        }
+        long start = System.nanoTime();
+        try {
+            return executor.submit(() -> {
+                try {
+                    return lookup.call();
+                } finally {
+                    permits.release();
+                    long took = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    if (took > deadline) {
+                        LOGGER.log(Level.WARNING, "{0} kept its thread for {1} ms looking up {2}, past the deadline of {3} ms",
+                                new Object[] {r, took, what, deadline});
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+}
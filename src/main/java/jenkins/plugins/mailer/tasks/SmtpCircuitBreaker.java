@@ -0,0 +1,217 @@
+package jenkins.plugins.mailer.tasks;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import org.eclipse.angus.mail.util.MailConnectException;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stops talking to an SMTP server which keeps failing to connect or time out.
+ *
+ * <p>
+ * There is one breaker per SMTP endpoint, that is per set of connection settings, so that one relay being down
+ * does not hold up mail which another one would deliver. Only the mail of the global configuration, balanced by
+ * {@link SmtpRelayBalancer}, goes through the breakers; a test e-mail to a mistyped host does not count.
+ *
+ * <p>
+ * Without it every message waits for the full connection timeout while the server is down. After
+ * {@link #FAILURE_THRESHOLD} consecutive connection failures the breaker opens and sends are refused
+ * right away with an {@link OpenException}: depending on {@link #SPOOL_WHEN_OPEN} the refused mail is
+ * put in the {@link MailOutbox} or reported as failed. Once {@link #OPEN_DURATION} has passed, one message
+ * at a time is let through as a probe, and the first successful probe closes the breaker again.
+ */
+@Restricted(NoExternalUse.class)
+public final class SmtpCircuitBreaker {
+
+    private static final Logger LOGGER = Logger.getLogger(SmtpCircuitBreaker.class.getName());
+
+    /** Number of consecutive connection failures which open the breaker. */
+    static /* not final */ int FAILURE_THRESHOLD = Integer.getInteger(SmtpCircuitBreaker.class.getName() + ".failureThreshold", 5);
+    /** Milliseconds the breaker stays open before probing the server again. */
+    static /* not final */ long OPEN_DURATION = Long.getLong(SmtpCircuitBreaker.class.getName() + ".openDuration", TimeUnit.MINUTES.toMillis(1));
+    /**
+     * Whether mail refused by an open breaker goes to the {@link MailOutbox} rather than failing the send.
+     * Mail which is already in the outbox always waits for the breaker to close.
+     */
+    static /* not final */ boolean SPOOL_WHEN_OPEN = Boolean.parseBoolean(System.getProperty(SmtpCircuitBreaker.class.getName() + ".spoolWhenOpen", "true"));
+
+    private static final ConcurrentMap<SmtpTransportPool.Key, SmtpCircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+
+    public enum State {
+        /** Mail is sent normally. */
+        CLOSED,
+        /** Mail is refused without contacting the server. */
+        OPEN,
+        /** A probe is allowed through to find out whether the server is back. */
+        HALF_OPEN
+    }
+
+    private final String name;
+    private final LongSupplier clock;
+
+    // all guarded by this
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probing;
+    private String lastFailure;
+
+    SmtpCircuitBreaker(@NonNull String name, @NonNull LongSupplier clock) {
+        this.name = name;
+        this.clock = clock;
+    }
+
+    /**
+     * @return the breaker of the SMTP endpoint messages created with the given session are sent to
+     */
+    public static @NonNull SmtpCircuitBreaker of(@NonNull Session session) {
+        SmtpTransportPool.Key key = SmtpTransportPool.Key.of(session, SmtpTransportPool.protocolOf(session));
+        return BREAKERS.computeIfAbsent(key, k -> new SmtpCircuitBreaker(k.toString(), System::currentTimeMillis));
+    }
+
+    /**
+     * @return the SMTP endpoint, as {@code protocol://user@host:port}
+     */
+    public @NonNull String getName() {
+        return name;
+    }
+
+    /**
+     * Asks for permission to contact the server. Every call which returns normally
+     * must be followed by {@link #onSuccess()}, {@link #onFailure(MessagingException)} or {@link #abandon()}.
+     * @throws OpenException if the server is considered down
+     */
+    public synchronized void acquirePermission() throws OpenException {
+        switch (state) {
+            case CLOSED:
+                return;
+            case OPEN:
+                long remaining = openedAt + OPEN_DURATION - clock.getAsLong();
+                if (remaining > 0) {
+                    throw new OpenException(name, remaining);
+                }
+                state = State.HALF_OPEN;
+                probing = true;
+                LOGGER.log(Level.INFO, "Probing whether the SMTP server {0} is available again", name);
+                return;
+            case HALF_OPEN:
+            default:
+                if (probing) {
+                    throw new OpenException(name, 0);
+                }
+                probing = true;
+        }
+    }
+
+    /**
+     * Records that the server answered, even if it rejected the message.
+     */
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            LOGGER.log(Level.INFO, "SMTP server {0} is available again, resuming e-mail delivery", name);
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probing = false;
+    }
+
+    /**
+     * Records the outcome of a failed attempt. Only failures to reach the server count towards opening the breaker.
+     * @param e why the attempt failed
+     */
+    public synchronized void onFailure(@NonNull MessagingException e) {
+        if (!isConnectionFailure(e)) {
+            onSuccess();
+            return;
+        }
+        consecutiveFailures++;
+        lastFailure = e.getMessage();
+        probing = false;
+        if (state == State.HALF_OPEN || consecutiveFailures >= FAILURE_THRESHOLD) {
+            if (state != State.OPEN) {
+                LOGGER.log(Level.WARNING, "SMTP server {0} failed {1} times in a row, suspending e-mail delivery through it for {2} seconds",
+                        new Object[] {name, consecutiveFailures, TimeUnit.MILLISECONDS.toSeconds(OPEN_DURATION)});
+            }
+            state = State.OPEN;
+            openedAt = clock.getAsLong();
+        }
+    }
+
+    /**
+     * Records that an attempt ended without telling anything about the server.
+     */
+    public synchronized void abandon() {
+        probing = false;
+    }
+
+    /**
+     * Decides whether a failure means the server could not be reached, as opposed to the server rejecting the message.
+     * Other I/O errors, such as a failed TLS handshake or a connection reset in the middle of a message, do not
+     * tell that the server is down.
+     */
+    static boolean isConnectionFailure(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MailConnectException || cause instanceof ConnectException
+                    || cause instanceof SocketTimeoutException || cause instanceof UnknownHostException) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    public synchronized @NonNull State getState() {
+        if (state == State.OPEN && clock.getAsLong() - openedAt >= OPEN_DURATION) {
+            // nothing tried since the open period expired, but the next send will probe
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public synchronized @CheckForNull String getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * @return seconds until the next probe is let through, {@code 0} if it may be sent now.
+     */
+    public synchronized long getSecondsUntilProbe() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        return Math.max(0, TimeUnit.MILLISECONDS.toSeconds(openedAt + OPEN_DURATION - clock.getAsLong()));
+    }
+
+    /**
+     * Thrown instead of contacting an SMTP server which is considered down.
+     */
+    public static final class OpenException extends MessagingException {
+        private static final long serialVersionUID = 1L;
+
+        OpenException(String name, long remainingMillis) {
+            super(remainingMillis > 0
+                    ? "SMTP server " + name + " is unavailable, not trying again for another " + TimeUnit.MILLISECONDS.toSeconds(remainingMillis) + " seconds"
+                    : "SMTP server " + name + " is unavailable, waiting for the outcome of a probe");
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package jenkins.plugins.mailer.tasks;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.AdministrativeMonitor;
+import jenkins.plugins.mailer.tasks.i18n.Messages;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tells administrators on the management page that e-mail delivery through some SMTP relays is suspended by
+ * their {@link SmtpCircuitBreaker}.
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public final class SmtpCircuitBreakerMonitor extends AdministrativeMonitor {
+
+    @Override
+    public String getDisplayName() {
+        return Messages.SmtpCircuitBreakerMonitor_DisplayName();
+    }
+
+    @Override
+    public boolean isActivated() {
+        return !getBreakers().isEmpty();
+    }
+
+    /**
+     * @return the breakers of the configured relays which are not closed.
+     */
+    public @NonNull List<SmtpCircuitBreaker> getBreakers() {
+        List<SmtpCircuitBreaker> breakers = new ArrayList<>();
+        for (SmtpRelayBalancer.Relay relay : SmtpRelayBalancer.get().getRelays()) {
+            SmtpCircuitBreaker breaker = relay.getBreaker();
+            if (breaker.getState() != SmtpCircuitBreaker.State.CLOSED && !breakers.contains(breaker)) {
+                breakers.add(breaker);
+            }
+        }
+        return breakers;
+    }
+
+    /**
+     * @return number of messages waiting in the outbox, or {@code -1} if spooling is disabled.
+     */
+    public int getPendingCount() {
+        MailOutbox outbox = MailOutbox.get();
+        return outbox == null ? -1 : outbox.getPendingCount();
+    }
+}
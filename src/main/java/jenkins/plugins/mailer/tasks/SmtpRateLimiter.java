@@ -0,0 +1,132 @@
+package jenkins.plugins.mailer.tasks;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket pacing the messages sent to the SMTP server.
+ *
+ * <p>
+ * The bucket holds up to {@code burst} tokens and is refilled at a sustained rate. Every message takes one
+ * token; when the bucket is empty the sender waits until its token is due. Tokens are reserved in arrival order,
+ * so concurrent senders are spaced out rather than all waking up at once.
+ *
+ * <p>
+ * The limiter is configured from {@link hudson.tasks.Mailer.DescriptorImpl} and applied by {@link SmtpTransportPool}.
+ */
+@Restricted(NoExternalUse.class)
+public final class SmtpRateLimiter {
+
+    private static final SmtpRateLimiter INSTANCE = new SmtpRateLimiter(System::nanoTime);
+
+    private final LongSupplier clock;
+
+    /** Nanoseconds to refill one token, {@code 0} if unlimited. Guarded by {@code this}. */
+    private double nanosPerToken;
+    private double capacity;
+    /** Available tokens, negative when senders are waiting for tokens not refilled yet. */
+    private double tokens;
+    private long lastRefill;
+
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong delayed = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    SmtpRateLimiter(@NonNull LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    public static @NonNull SmtpRateLimiter get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param perSecond sustained number of messages per second, {@code 0} or less for no limit
+     * @param burst number of messages which may be sent at once, at least one
+     */
+    public synchronized void configure(double perSecond, int burst) {
+        long now = clock.getAsLong();
+        if (perSecond <= 0) {
+            nanosPerToken = 0;
+            return;
+        }
+        boolean wasUnlimited = nanosPerToken <= 0;
+        refill(now);
+        nanosPerToken = TimeUnit.SECONDS.toNanos(1) / perSecond;
+        capacity = Math.max(1, burst);
+        tokens = wasUnlimited ? capacity : Math.min(tokens, capacity);
+        lastRefill = now;
+    }
+
+    /**
+     * Takes a token for one message, waiting for it if necessary.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        long wait = reserve();
+        acquired.incrementAndGet();
+        if (wait > 0) {
+            delayed.incrementAndGet();
+            totalWaitNanos.addAndGet(wait);
+            maxWaitNanos.accumulateAndGet(wait, Math::max);
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Takes a token, which may not be available yet.
+     * @return nanoseconds until the token is due
+     */
+    synchronized long reserve() {
+        if (nanosPerToken <= 0) {
+            return 0;
+        }
+        refill(clock.getAsLong());
+        tokens -= 1;
+        if (tokens >= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(-tokens * nanosPerToken);
+    }
+
+    private void refill(long now) {
+        if (nanosPerToken > 0) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) / nanosPerToken);
+        }
+        lastRefill = now;
+    }
+
+    /**
+     * @return number of messages which went through the limiter.
+     */
+    public long getAcquiredCount() {
+        return acquired.get();
+    }
+
+    /**
+     * @return number of messages which had to wait for a token.
+     */
+    public long getDelayedCount() {
+        return delayed.get();
+    }
+
+    /**
+     * @return milliseconds all messages together waited for tokens.
+     */
+    public long getTotalWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get());
+    }
+
+    /**
+     * @return longest time in milliseconds a single message waited for its token.
+     */
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+    }
+}
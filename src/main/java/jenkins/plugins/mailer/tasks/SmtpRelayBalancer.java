@@ -0,0 +1,287 @@
+package jenkins.plugins.mailer.tasks;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.plugins.mailer.tasks.i18n.Messages;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import jakarta.mail.Session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Spreads mail over the configured SMTP relays and takes failing relays out of rotation.
+ *
+ * <p>
+ * Each relay has its own {@link Session}, built from the global configuration with the host and port of the relay.
+ * Only messages created with the primary session of the global configuration are balanced, so messages with
+ * settings of their own, like a test e-mail, still go where they were meant to.
+ *
+ * <p>
+ * A relay which cannot be reached is skipped for a cooldown period, which doubles with every further failure up
+ * to {@link #MAX_COOLDOWN}, and is back in rotation as soon as a message gets through it again. When all relays are
+ * cooling down, the one which has been out of rotation the longest is tried anyway. A relay whose
+ * {@link SmtpCircuitBreaker} is open is left out of rotation until the breaker lets a probe through.
+ */
+@Restricted(NoExternalUse.class)
+public final class SmtpRelayBalancer {
+
+    private static final Logger LOGGER = Logger.getLogger(SmtpRelayBalancer.class.getName());
+
+    /** Milliseconds a relay is skipped after its first failure. */
+    static /* not final */ long BASE_COOLDOWN = Long.getLong(SmtpRelayBalancer.class.getName() + ".baseCooldown", TimeUnit.SECONDS.toMillis(30));
+    /** Maximum number of milliseconds a relay is skipped. */
+    static /* not final */ long MAX_COOLDOWN = Long.getLong(SmtpRelayBalancer.class.getName() + ".maxCooldown", TimeUnit.MINUTES.toMillis(10));
+
+    private static final SmtpRelayBalancer INSTANCE = new SmtpRelayBalancer(System::currentTimeMillis);
+
+    public enum Strategy {
+        /** The first relay in rotation gets all mail. */
+        PRIORITY,
+        /** Relays take turns, as often as their weight says. */
+        ROUND_ROBIN,
+        /** The relay with the fewest messages in flight relative to its weight gets the next one. */
+        LEAST_OUTSTANDING;
+
+        public String getDisplayName() {
+            switch (this) {
+                case ROUND_ROBIN:
+                    return Messages.SmtpRelayBalancer_Strategy_ROUND_ROBIN();
+                case LEAST_OUTSTANDING:
+                    return Messages.SmtpRelayBalancer_Strategy_LEAST_OUTSTANDING();
+                case PRIORITY:
+                default:
+                    return Messages.SmtpRelayBalancer_Strategy_PRIORITY();
+            }
+        }
+    }
+
+    private final LongSupplier clock;
+
+    private volatile Group group;
+
+    SmtpRelayBalancer(@NonNull LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    public static @NonNull SmtpRelayBalancer get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Replaces the relays.
+     * @param primary session of the global configuration, whose messages are balanced
+     * @param relays all relays including the one of {@code primary}, in configured order
+     * @param strategy how the relay for the next message is picked
+     */
+    public void configure(@NonNull Session primary, @NonNull List<Relay> relays, @NonNull Strategy strategy) {
+        group = new Group(primary, new ArrayList<>(relays), strategy);
+    }
+
+    /**
+     * Orders the relays to try for a message.
+     * @param session session the message was created with
+     * @return relays to try in turn, or {@code null} if the message is not balanced
+     */
+    @CheckForNull
+    List<Relay> select(@NonNull Session session) {
+        Group g = group;
+        if (g == null || g.primary != session) {
+            return null;
+        }
+        return g.select(clock.getAsLong());
+    }
+
+    /**
+     * @return the configured relays, empty if none are configured yet.
+     */
+    public @NonNull List<Relay> getRelays() {
+        Group g = group;
+        return g == null ? Collections.emptyList() : Collections.unmodifiableList(g.relays);
+    }
+
+    void onSuccess(@NonNull Relay relay) {
+        synchronized (relay) {
+            if (relay.failures > 0) {
+                LOGGER.log(Level.INFO, "SMTP relay {0} is back in rotation", relay);
+            }
+            relay.failures = 0;
+            relay.downUntil = 0;
+        }
+    }
+
+    void onFailure(@NonNull Relay relay) {
+        synchronized (relay) {
+            relay.failures++;
+            long cooldown = BASE_COOLDOWN << Math.min(relay.failures - 1, 30);
+            if (cooldown <= 0 || cooldown > MAX_COOLDOWN) {
+                cooldown = MAX_COOLDOWN;
+            }
+            relay.downUntil = clock.getAsLong() + cooldown;
+            LOGGER.log(Level.WARNING, "SMTP relay {0} failed {1} times in a row, taking it out of rotation for {2} seconds",
+                    new Object[] {relay, relay.failures, TimeUnit.MILLISECONDS.toSeconds(cooldown)});
+        }
+    }
+
+    private static final class Group {
+        private final Session primary;
+        private final List<Relay> relays;
+        private final Strategy strategy;
+        /** Smooth weighted round robin state, guarded by {@code this}. */
+        private final int[] current;
+
+        Group(Session primary, List<Relay> relays, Strategy strategy) {
+            this.primary = primary;
+            this.relays = relays;
+            this.strategy = strategy;
+            this.current = new int[relays.size()];
+        }
+
+        List<Relay> select(long now) {
+            List<Relay> healthy = new ArrayList<>(relays.size());
+            List<Relay> suspended = new ArrayList<>();
+            Relay coolest = null;
+            for (Relay relay : relays) {
+                long downUntil = relay.getDownUntil();
+                if (relay.breaker.getState() == SmtpCircuitBreaker.State.OPEN) {
+                    suspended.add(relay);
+                } else if (downUntil <= now) {
+                    healthy.add(relay);
+                } else if (coolest == null || downUntil < coolest.getDownUntil()) {
+                    coolest = relay;
+                }
+            }
+            if (healthy.isEmpty()) {
+                // with all breakers open, sending is refused by them without contacting any relay
+                return coolest == null ? suspended : Collections.singletonList(coolest);
+            }
+            Relay first;
+            switch (strategy) {
+                case ROUND_ROBIN:
+                    first = nextRoundRobin(healthy);
+                    break;
+                case LEAST_OUTSTANDING:
+                    first = leastOutstanding(healthy);
+                    break;
+                case PRIORITY:
+                default:
+                    return healthy;
+            }
+            // the others in configured order, to fail over to
+            healthy.remove(first);
+            healthy.add(0, first);
+            return healthy;
+        }
+
+        /**
+         * Smooth weighted round robin: every relay earns its weight each turn and the richest one pays
+         * the total, so a relay of weight 3 next to one of weight 1 gets 3 out of 4 messages, interleaved.
+         */
+        private synchronized Relay nextRoundRobin(List<Relay> healthy) {
+            int total = 0;
+            int best = -1;
+            for (int i = 0; i < relays.size(); i++) {
+                Relay relay = relays.get(i);
+                if (!healthy.contains(relay)) {
+                    continue;
+                }
+                current[i] += relay.weight;
+                total += relay.weight;
+                if (best < 0 || current[i] > current[best]) {
+                    best = i;
+                }
+            }
+            current[best] -= total;
+            return relays.get(best);
+        }
+
+        private static Relay leastOutstanding(List<Relay> healthy) {
+            Relay best = null;
+            double bestLoad = Double.MAX_VALUE;
+            for (Relay relay : healthy) {
+                double load = (double) relay.outstanding.get() / relay.weight;
+                if (load < bestLoad) {
+                    best = relay;
+                    bestLoad = load;
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * An SMTP server mail can be sent through, and what is known about its health.
+     */
+    public static final class Relay {
+        private final String name;
+        private final Session session;
+        private final SmtpCircuitBreaker breaker;
+        private final int weight;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        // guarded by this
+        private int failures;
+        private long downUntil;
+
+        public Relay(@NonNull String name, @NonNull Session session, int weight) {
+            this(name, session, weight, SmtpCircuitBreaker.of(session));
+        }
+
+        Relay(@NonNull String name, @NonNull Session session, int weight, @NonNull SmtpCircuitBreaker breaker) {
+            this.name = name;
+            this.session = session;
+            this.breaker = breaker;
+            this.weight = Math.max(1, weight);
+        }
+
+        @NonNull Session getSession() {
+            return session;
+        }
+
+        /**
+         * @return the breaker of the SMTP endpoint of this relay
+         */
+        public @NonNull SmtpCircuitBreaker getBreaker() {
+            return breaker;
+        }
+
+        /**
+         * Counts a message being sent through this relay until {@link #done()}.
+         */
+        void begin() {
+            outstanding.incrementAndGet();
+        }
+
+        void done() {
+            outstanding.decrementAndGet();
+        }
+
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        public synchronized int getFailures() {
+            return failures;
+        }
+
+        synchronized long getDownUntil() {
+            return downUntil;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
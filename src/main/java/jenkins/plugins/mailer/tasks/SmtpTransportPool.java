@@ -0,0 +1,380 @@
+package jenkins.plugins.mailer.tasks;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.init.Terminator;
+import hudson.model.PeriodicWork;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import jakarta.mail.Address;
+import jakarta.mail.MessagingException;
+import jakarta.mail.PasswordAuthentication;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps connected, authenticated {@link Transport}s around so that consecutive messages
+ * do not each pay for a TCP connection, a TLS handshake and SMTP authentication.
+ *
+ * <p>
+ * Connections are keyed on the connection settings of the {@link Session} a message was created with
+ * (host, port, SSL/TLS and credentials), so messages sent with different settings, like a test e-mail,
+ * never share a connection. A pooled connection is checked before reuse with {@link Transport#isConnected()},
+ * which for SMTP issues a {@code NOOP}, and is closed once it has been idle for too long.
+ */
+@Restricted(NoExternalUse.class)
+public final class SmtpTransportPool {
+
+    private static final Logger LOGGER = Logger.getLogger(SmtpTransportPool.class.getName());
+
+    /** Maximum number of idle connections kept per set of connection settings. */
+    static /* not final */ int MAX_IDLE = Integer.getInteger(SmtpTransportPool.class.getName() + ".maxIdle", 4);
+    /** Milliseconds after which an idle connection is closed. */
+    static /* not final */ long IDLE_TIMEOUT = Long.getLong(SmtpTransportPool.class.getName() + ".idleTimeout", TimeUnit.SECONDS.toMillis(60));
+
+    private static final SmtpTransportPool INSTANCE = new SmtpTransportPool();
+
+    private final ConcurrentMap<Key, Deque<Idle>> idle = new ConcurrentHashMap<>();
+
+    SmtpTransportPool() {
+    }
+
+    public static @NonNull SmtpTransportPool get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Sends an already saved message to all of its recipients over a pooled connection,
+     * pacing messages as configured in {@link SmtpRateLimiter} and spreading them over the relays of {@link SmtpRelayBalancer},
+     * skipping those whose {@link SmtpCircuitBreaker} is open.
+     * Unlike {@link Transport#send(jakarta.mail.Message)} this does not call {@link MimeMessage#saveChanges()},
+     * which would assign a new {@code Message-ID}.
+     * @param msg a message which has already been saved
+     * @throws MessagingException if the message could not be sent
+     */
+    public void send(@NonNull MimeMessage msg) throws MessagingException {
+        Address[] recipients = msg.getAllRecipients();
+        if (recipients == null || recipients.length == 0) {
+            throw new SendFailedException("No recipient addresses");
+        }
+        Session session = msg.getSession();
+        String protocol = protocolOf(session);
+        List<SmtpRelayBalancer.Relay> relays = SmtpRelayBalancer.get().select(session);
+        if (relays == null) {
+            // settings of its own, like a test e-mail: sent as is, without a say in whether the relays are up
+            pace(null);
+            send(session, protocol, msg, recipients);
+        } else {
+            send(relays, protocol, msg, recipients);
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Delivered e-mail " + msg.getMessageID() + " to " + Arrays.toString(recipients));
+        }
+    }
+
+    static @NonNull String protocolOf(@NonNull Session session) {
+        String protocol = session.getProperty("mail.transport.protocol.rfc822");
+        return protocol == null ? "smtp" : protocol;
+    }
+
+    /**
+     * Waits for the rate limit.
+     * @param breaker breaker whose permission was acquired, given back if the wait is interrupted
+     */
+    private static void pace(@CheckForNull SmtpCircuitBreaker breaker) throws MessagingException {
+        try {
+            SmtpRateLimiter.get().acquire();
+        } catch (InterruptedException e) {
+            if (breaker != null) {
+                breaker.abandon();
+            }
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted while waiting for the SMTP rate limit", e);
+        }
+    }
+
+    /**
+     * Sends through the first of the given relays which can be reached, asking the breaker of each relay first,
+     * so that a relay which is down is skipped without waiting for the rate limit.
+     */
+    private void send(List<SmtpRelayBalancer.Relay> relays, String protocol, MimeMessage msg, Address[] recipients) throws MessagingException {
+        SmtpRelayBalancer balancer = SmtpRelayBalancer.get();
+        MessagingException failure = null;
+        SmtpCircuitBreaker.OpenException refused = null;
+        boolean paced = false;
+        for (SmtpRelayBalancer.Relay relay : relays) {
+            SmtpCircuitBreaker breaker = relay.getBreaker();
+            try {
+                breaker.acquirePermission();
+            } catch (SmtpCircuitBreaker.OpenException e) {
+                if (refused != null) {
+                    e.addSuppressed(refused);
+                }
+                refused = e;
+                continue;
+            }
+            if (!paced) {
+                pace(breaker);
+                paced = true;
+            }
+            relay.begin();
+            try {
+                send(relay.getSession(), protocol, msg, recipients);
+                breaker.onSuccess();
+                balancer.onSuccess(relay);
+                return;
+            } catch (MessagingException e) {
+                breaker.onFailure(e);
+                if (!SmtpCircuitBreaker.isConnectionFailure(e)) {
+                    // the relay answered, another one would not do better
+                    balancer.onSuccess(relay);
+                    throw e;
+                }
+                balancer.onFailure(relay);
+                if (failure != null) {
+                    e.addSuppressed(failure);
+                }
+                failure = e;
+            } catch (RuntimeException e) {
+                breaker.abandon();
+                throw e;
+            } finally {
+                relay.done();
+            }
+        }
+        if (failure != null) {
+            if (refused != null) {
+                failure.addSuppressed(refused);
+            }
+            throw failure;
+        }
+        // only breakers which are open were asked, so no relay was contacted
+        throw refused != null ? refused : new MessagingException("No SMTP relay configured");
+    }
+
+    private void send(Session session, String protocol, MimeMessage msg, Address[] recipients) throws MessagingException {
+        Key key = Key.of(session, protocol);
+        Transport transport = borrow(key, session, protocol);
+        boolean reusable = false;
+        try {
+            transport.sendMessage(msg, recipients);
+            reusable = true;
+        } catch (SendFailedException e) {
+            // rejected recipients say nothing about the connection itself
+            reusable = true;
+            throw e;
+        } finally {
+            if (reusable) {
+                release(key, transport);
+            } else {
+                close(transport);
+            }
+        }
+    }
+
+    private Transport borrow(Key key, Session session, String protocol) throws MessagingException {
+        Deque<Idle> pooled = idle.get(key);
+        if (pooled != null) {
+            long now = System.currentTimeMillis();
+            Idle candidate;
+            while ((candidate = pooled.pollFirst()) != null) {
+                // for SMTP isConnected() issues a NOOP, which also catches connections the server dropped
+                if (!candidate.isExpired(now) && candidate.transport.isConnected()) {
+                    return candidate.transport;
+                }
+                close(candidate.transport);
+            }
+        }
+        Transport transport = session.getTransport(protocol);
+        transport.connect();
+        return transport;
+    }
+
+    private void release(Key key, Transport transport) {
+        Deque<Idle> pooled = idle.computeIfAbsent(key, k -> new ConcurrentLinkedDeque<>());
+        if (pooled.size() < MAX_IDLE) {
+            // most recently used first, so the tail is what goes idle for good
+            pooled.addFirst(new Idle(transport, System.currentTimeMillis()));
+        } else {
+            close(transport);
+        }
+    }
+
+    /**
+     * Closes connections which have been idle for longer than {@link #IDLE_TIMEOUT}.
+     */
+    void evictIdle() {
+        long now = System.currentTimeMillis();
+        for (Deque<Idle> pooled : idle.values()) {
+            for (Idle candidate : pooled) {
+                if (candidate.isExpired(now) && pooled.removeFirstOccurrence(candidate)) {
+                    close(candidate.transport);
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes all idle connections.
+     */
+    void closeAll() {
+        for (Deque<Idle> pooled : idle.values()) {
+            Idle candidate;
+            while ((candidate = pooled.pollFirst()) != null) {
+                close(candidate.transport);
+            }
+        }
+    }
+
+    /**
+     * @return number of idle connections currently pooled.
+     */
+    public int getIdleCount() {
+        int count = 0;
+        for (Deque<Idle> pooled : idle.values()) {
+            count += pooled.size();
+        }
+        return count;
+    }
+
+    private static void close(Transport transport) {
+        try {
+            transport.close();
+        } catch (MessagingException e) {
+            LOGGER.log(Level.FINE, "Failed to close SMTP connection", e);
+        }
+    }
+
+    @Terminator
+    public static void shutdown() {
+        INSTANCE.closeAll();
+    }
+
+    private static final class Idle {
+        private final Transport transport;
+        private final long since;
+
+        Idle(Transport transport, long since) {
+            this.transport = transport;
+            this.since = since;
+        }
+
+        boolean isExpired(long now) {
+            return now - since > IDLE_TIMEOUT;
+        }
+    }
+
+    /**
+     * Connection settings of a {@link Session}. Credentials are only kept as a digest.
+     */
+    static final class Key {
+        private final String protocol;
+        private final String host;
+        private final String port;
+        private final String ssl;
+        private final String starttls;
+        private final String user;
+        private final byte[] password;
+
+        private Key(String protocol, String host, String port, String ssl, String starttls, String user, byte[] password) {
+            this.protocol = protocol;
+            this.host = host;
+            this.port = port;
+            this.ssl = ssl;
+            this.starttls = starttls;
+            this.user = user;
+            this.password = password;
+        }
+
+        static Key of(Session session, String protocol) {
+            String prefix = "mail." + protocol + ".";
+            String user = null;
+            byte[] password = null;
+            PasswordAuthentication auth = session.requestPasswordAuthentication(null, -1, protocol, null, null);
+            if (auth != null) {
+                user = auth.getUserName();
+                password = digest(auth.getPassword());
+            }
+            return new Key(protocol,
+                    session.getProperty(prefix + "host"),
+                    session.getProperty(prefix + "port"),
+                    session.getProperty(prefix + "ssl.enable"),
+                    session.getProperty(prefix + "starttls.enable"),
+                    user, password);
+        }
+
+        private static byte[] digest(@CheckForNull String password) {
+            if (password == null) {
+                return null;
+            }
+            try {
+                return MessageDigest.getInstance("SHA-256").digest(password.getBytes(StandardCharsets.UTF_8));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return protocol.equals(that.protocol)
+                    && Objects.equals(host, that.host)
+                    && Objects.equals(port, that.port)
+                    && Objects.equals(ssl, that.ssl)
+                    && Objects.equals(starttls, that.starttls)
+                    && Objects.equals(user, that.user)
+                    && Arrays.equals(password, that.password);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(protocol, host, port, ssl, starttls, user) * 31 + Arrays.hashCode(password);
+        }
+
+        @Override
+        public String toString() {
+            return protocol + "://" + (user == null ? "" : user + "@") + (host == null ? "localhost" : host) + (port == null ? "" : ":" + port);
+        }
+    }
+
+    /**
+     * Closes pooled connections which have not been used for a while.
+     */
+    @Extension
+    @Restricted(NoExternalUse.class)
+    public static final class IdleEviction extends PeriodicWork {
+        @Override
+        public long getRecurrencePeriod() {
+            return Math.max(IDLE_TIMEOUT, TimeUnit.SECONDS.toMillis(10));
+        }
+
+        @Override
+        protected void doRun() {
+            INSTANCE.evictIdle();
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package jenkins.plugins.mailer.tasks;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.XmlFile;
+import hudson.util.XStream2;
+import jenkins.model.Jenkins;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Addresses no mail is sent to any more because mail to them bounced.
+ *
+ * <p>
+ * The list is kept in {@code mailer-suppressed-addresses.xml} under {@code JENKINS_HOME} and in memory, and
+ * is checked for every recipient by {@link SuppressionListFilter}. As almost no recipient is on it, the check
+ * first asks a {@link BloomFilter} rebuilt after every change, which rules out nearly all of them without
+ * touching the list itself. Entries expire after {@link #TTL} milliseconds unless added with another expiry,
+ * so that an address fixed since gets mail again.
+ */
+@Restricted(NoExternalUse.class)
+public final class SuppressionList {
+
+    private static final Logger LOGGER = Logger.getLogger(SuppressionList.class.getName());
+
+    /** Milliseconds an address stays suppressed unless told otherwise, {@code 0} for ever. */
+    static /* not final */ long TTL = Long.getLong(SuppressionList.class.getName() + ".ttl", TimeUnit.DAYS.toMillis(90));
+    /** Number of addresses the Bloom filter is sized for at least. */
+    static /* not final */ int EXPECTED_ENTRIES = Integer.getInteger(SuppressionList.class.getName() + ".expectedEntries", 10000);
+
+    private static final double FALSE_POSITIVES = 0.01;
+    private static final int MAX_REASON = 1000;
+
+    private static final XStream2 XSTREAM = new XStream2();
+
+    static {
+        XSTREAM.alias("suppressedAddress", Entry.class);
+    }
+
+    private static SuppressionList instance;
+
+    private final XmlFile file;
+    private final LongSupplier clock;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile BloomFilter bloom;
+
+    SuppressionList(@NonNull File file, @NonNull LongSupplier clock) {
+        this.file = new XmlFile(XSTREAM, file);
+        this.clock = clock;
+        rebuild();
+    }
+
+    /**
+     * @return the list of this Jenkins instance, or {@code null} if Jenkins is not running.
+     */
+    public static synchronized @CheckForNull SuppressionList get() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            return null;
+        }
+        File file = new File(jenkins.getRootDir(), "mailer-suppressed-addresses.xml");
+        if (instance == null || !instance.file.getFile().equals(file)) {
+            instance = new SuppressionList(file, System::currentTimeMillis);
+            try {
+                instance.load();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to load suppressed e-mail addresses from " + file, e);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * A suppressed address.
+     */
+    public static final class Entry {
+        private final String address;
+        private final String reason;
+        private final long added;
+        private final long expires;
+
+        Entry(String address, String reason, long added, long expires) {
+            this.address = address;
+            this.reason = reason;
+            this.added = added;
+            this.expires = expires;
+        }
+
+        public @NonNull String getAddress() {
+            return address;
+        }
+
+        /**
+         * @return why the address is suppressed, typically the diagnostic of the bounce.
+         */
+        public @NonNull String getReason() {
+            return reason;
+        }
+
+        /**
+         * @return when the address was suppressed, in milliseconds since the epoch.
+         */
+        public long getAdded() {
+            return added;
+        }
+
+        /**
+         * @return when the address gets mail again, in milliseconds since the epoch, or {@code 0} for never.
+         */
+        public long getExpires() {
+            return expires;
+        }
+
+        boolean isExpired(long now) {
+            return expires != 0 && expires <= now;
+        }
+    }
+
+    /**
+     * @param address an e-mail address, with or without personal name
+     * @return the entry suppressing the address, or {@code null} if mail may be sent to it
+     */
+    public @CheckForNull Entry lookup(@NonNull String address) {
+        String key = UserAddressIndex.normalize(address);
+        if (key == null || !bloom.mightContain(key)) {
+            return null;
+        }
+        Entry entry = entries.get(key);
+        return entry == null || entry.isExpired(clock.getAsLong()) ? null : entry;
+    }
+
+    /**
+     * @return all entries which did not expire.
+     */
+    public @NonNull List<Entry> getEntries() {
+        long now = clock.getAsLong();
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (!entry.isExpired(now)) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return when an address suppressed now for the given time expires, {@code 0} for never, which is also
+     *         what a time too long to be added to now amounts to
+     */
+    static long expiry(long now, long ttl) {
+        if (ttl == 0) {
+            return 0;
+        }
+        try {
+            return Math.addExact(now, ttl);
+        } catch (ArithmeticException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Suppresses addresses, replacing any entries they already have.
+     * @param addresses e-mail addresses, with or without personal name
+     * @param reason why they are suppressed
+     * @param ttl milliseconds they stay suppressed, {@code 0} for ever, or {@code -1} for the default {@link #TTL}
+     * @return the number of addresses suppressed
+     */
+    public int add(@NonNull Collection<String> addresses, @NonNull String reason, long ttl) throws IOException {
+        Map<String, String> reasons = new LinkedHashMap<>();
+        for (String address : addresses) {
+            reasons.put(address, reason);
+        }
+        return add(reasons, ttl);
+    }
+
+    /**
+     * Suppresses addresses, each for its own reason, replacing any entries they already have.
+     * @param reasons e-mail addresses, with or without personal name, and why they are suppressed
+     * @param ttl milliseconds they stay suppressed, {@code 0} for ever, or {@code -1} for the default {@link #TTL}
+     * @return the number of addresses suppressed
+     */
+    public synchronized int add(@NonNull Map<String, String> reasons, long ttl) throws IOException {
+        long now = clock.getAsLong();
+        long t = ttl < 0 ? TTL : ttl;
+        long expires = expiry(now, t);
+        int count = 0;
+        for (Map.Entry<String, String> e : reasons.entrySet()) {
+            String key = UserAddressIndex.normalize(e.getKey());
+            if (key != null) {
+                String reason = e.getValue();
+                entries.put(key, new Entry(key, reason.length() > MAX_REASON ? reason.substring(0, MAX_REASON) : reason, now, expires));
+                count++;
+            }
+        }
+        if (count > 0) {
+            changed();
+        }
+        return count;
+    }
+
+    /**
+     * Lets mail be sent to addresses again.
+     * @param addresses e-mail addresses, with or without personal name
+     * @return the number of addresses which were suppressed
+     */
+    public synchronized int expire(@NonNull Collection<String> addresses) throws IOException {
+        int count = 0;
+        for (String address : addresses) {
+            String key = UserAddressIndex.normalize(address);
+            if (key != null && entries.remove(key) != null) {
+                count++;
+            }
+        }
+        if (count > 0) {
+            changed();
+        }
+        return count;
+    }
+
+    /**
+     * Lets mail be sent again to the addresses suppressed before some time, and drops expired entries.
+     * @param before milliseconds since the epoch
+     * @return the number of addresses which were suppressed
+     */
+    public synchronized int expireBefore(long before) throws IOException {
+        long now = clock.getAsLong();
+        int count = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.added < before || entry.isExpired(now)) {
+                entries.remove(entry.address);
+                count++;
+            }
+        }
+        if (count > 0) {
+            changed();
+        }
+        return count;
+    }
+
+    private void changed() throws IOException {
+        rebuild();
+        save();
+    }
+
+    private void rebuild() {
+        BloomFilter b = new BloomFilter(Math.max(EXPECTED_ENTRIES, entries.size() * 2), FALSE_POSITIVES);
+        for (String key : entries.keySet()) {
+            b.add(key);
+        }
+        bloom = b;
+    }
+
+    synchronized void load() throws IOException {
+        try {
+            if (!file.exists()) {
+                return; // nothing suppressed yet
+            }
+            Object read = file.read();
+            if (!(read instanceof List)) {
+                LOGGER.log(Level.WARNING, "Ignoring {0}, which does not list suppressed addresses", file);
+                return;
+            }
+            long now = clock.getAsLong();
+            for (Object o : (List<?>) read) {
+                if (!(o instanceof Entry)) {
+                    continue;
+                }
+                Entry entry = (Entry) o;
+                if (entry.address != null && entry.reason != null && !entry.isExpired(now)) {
+                    entries.put(entry.address, entry);
+                }
+            }
+        } finally {
+            rebuild();
+        }
+    }
+
+    /**
+     * Writes the file, replacing it at once.
+     */
+    private void save() throws IOException {
+        file.write(new ArrayList<>(entries.values()));
+    }
+}
@@ -0,0 +1,104 @@
+package jenkins.plugins.mailer.tasks;
+
+import hudson.Extension;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.StaplerResponse2;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Manages the {@link SuppressionList} over HTTP, for scripts processing bounces.
+ *
+ * <ul>
+ * <li>{@code GET /mailer-suppressions/list} lists the suppressed addresses, one per line, with the reason,
+ * when they were suppressed and expire, and the ids of the users the address belongs to, separated by tabs.
+ * <li>{@code POST /mailer-suppressions/add?reason=...&days=...} suppresses the addresses in the request body,
+ * one per line.
+ * <li>{@code POST /mailer-suppressions/expire} sends mail again to the addresses in the request body, or with
+ * {@code ?olderThan=days} to all addresses suppressed longer ago.
+ * </ul>
+ * Each request answers with the number of addresses listed or changed, and needs the Manage permission.
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public final class SuppressionListAction implements RootAction {
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return null;
+    }
+
+    @Override
+    public String getUrlName() {
+        return "mailer-suppressions";
+    }
+
+    public void doList(StaplerResponse2 rsp) throws IOException {
+        List<SuppressionList.Entry> entries = getList().getEntries();
+        UserAddressIndex users = UserAddressIndex.get();
+        try (PrintWriter w = text(rsp)) {
+            for (SuppressionList.Entry entry : entries) {
+                w.println(entry.getAddress() + '\t' + entry.getReason().replace('\t', ' ').replace('\n', ' ')
+                        + '\t' + entry.getAdded() + '\t' + entry.getExpires()
+                        + '\t' + String.join(",", users.getUserIds(entry.getAddress())));
+            }
+        }
+    }
+
+    @RequirePOST
+    public void doAdd(StaplerRequest2 req, StaplerResponse2 rsp, @QueryParameter String reason, @QueryParameter Integer days) throws IOException {
+        SuppressionList list = getList();
+        long ttl = days == null || days < 0 ? -1 : TimeUnit.DAYS.toMillis(days);
+        int count = list.add(readAddresses(req), reason != null ? reason : "Suppressed over HTTP", ttl);
+        try (PrintWriter w = text(rsp)) {
+            w.println(count);
+        }
+    }
+
+    @RequirePOST
+    public void doExpire(StaplerRequest2 req, StaplerResponse2 rsp, @QueryParameter Integer olderThan) throws IOException {
+        SuppressionList list = getList();
+        int count = olderThan != null && olderThan >= 0
+                ? list.expireBefore(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(olderThan))
+                : list.expire(readAddresses(req));
+        try (PrintWriter w = text(rsp)) {
+            w.println(count);
+        }
+    }
+
+    private static SuppressionList getList() {
+        Jenkins.get().checkPermission(Jenkins.MANAGE);
+        SuppressionList list = SuppressionList.get();
+        if (list == null) {
+            throw new IllegalStateException("Jenkins is not running");
+        }
+        return list;
+    }
+
+    private static List<String> readAddresses(StaplerRequest2 req) throws IOException {
+        try (BufferedReader reader = req.getReader()) {
+            return reader.lines().map(String::trim).filter(line -> !line.isEmpty()).collect(Collectors.toList());
+        }
+    }
+
+    private static PrintWriter text(StaplerResponse2 rsp) throws IOException {
+        rsp.setContentType("text/plain;charset=UTF-8");
+        return rsp.getWriter();
+    }
+}
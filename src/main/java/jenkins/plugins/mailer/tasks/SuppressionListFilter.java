@@ -0,0 +1,59 @@
+package jenkins.plugins.mailer.tasks;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import jenkins.plugins.mailer.tasks.i18n.Messages;
+
+import jakarta.mail.internet.InternetAddress;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Leaves out recipients on the {@link SuppressionList}.
+ */
+@Extension
+public final class SuppressionListFilter extends MailAddressFilter {
+
+    @Override
+    public boolean shouldFilter(Run<?, ?> build, TaskListener listener, InternetAddress address) {
+        SuppressionList list = SuppressionList.get();
+        return list != null && isSuppressed(list, listener, address);
+    }
+
+    @Override
+    public Set<InternetAddress> filterAll(Run<?, ?> build, TaskListener listener, Set<InternetAddress> addresses) {
+        Set<InternetAddress> filtered = new LinkedHashSet<>();
+        SuppressionList list = SuppressionList.get();
+        if (list == null) {
+            return filtered;
+        }
+        for (InternetAddress address : addresses) {
+            if (isSuppressed(list, listener, address)) {
+                filtered.add(address);
+            }
+        }
+        return filtered;
+    }
+
+    private static boolean isSuppressed(SuppressionList list, TaskListener listener, InternetAddress address) {
+        String a = address.getAddress();
+        SuppressionList.Entry entry = a != null ? list.lookup(a) : null;
+        if (entry == null) {
+            return false;
+        }
+        listener.getLogger().println(Messages.SuppressionListFilter_Suppressed(address, entry.getReason()));
+        return true;
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends MailAddressFilterDescriptor {
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return Messages.SuppressionListFilter_DisplayName();
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package jenkins.plugins.mailer.tasks;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Saveable;
+import hudson.model.User;
+import hudson.model.listeners.SaveableListener;
+import hudson.tasks.MailAddressResolver;
+import hudson.tasks.Mailer;
+import jenkins.util.Timer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.InternetAddress;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Finds the users an e-mail address belongs to, for example to handle a bounce.
+ *
+ * <p>
+ * Looking through {@link User#getAll()} costs a property lookup, and possibly a round of
+ * {@link MailAddressResolver} queries, per user. Instead, this index is filled once in the background when
+ * Jenkins starts and then kept up to date: with the {@link Mailer.UserProperty} of a user whenever it is saved,
+ * and with the addresses found by resolvers as the {@link ResolvedAddressCache} learns them. Addresses are
+ * compared without their personal name and ignoring case. Users who configured an address explicitly come
+ * before users whose address was only inferred.
+ */
+@Restricted(NoExternalUse.class)
+public final class UserAddressIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(UserAddressIndex.class.getName());
+
+    private static final UserAddressIndex INSTANCE = new UserAddressIndex();
+
+    // all guarded by this
+    private final Map<String, Set<String>> configuredUsers = new HashMap<>();
+    private final Map<String, Set<String>> resolvedUsers = new HashMap<>();
+    private final Map<String, String> configuredAddresses = new HashMap<>();
+    private final Map<String, String> resolvedAddresses = new HashMap<>();
+    private boolean ready;
+
+    UserAddressIndex() {
+    }
+
+    public static @NonNull UserAddressIndex get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param address an e-mail address, with or without personal name
+     * @return the first user the address belongs to, or {@code null} if there is none
+     */
+    public @CheckForNull User getUser(@NonNull String address) {
+        for (String userId : getUserIds(address)) {
+            User user = User.getById(userId, false);
+            if (user != null) {
+                return user;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param address an e-mail address, with or without personal name
+     * @return the ids of the users the address belongs to, explicitly configured ones first
+     */
+    public synchronized @NonNull List<String> getUserIds(@NonNull String address) {
+        String key = normalize(address);
+        if (key == null) {
+            return Collections.emptyList();
+        }
+        Set<String> ids = new LinkedHashSet<>(configuredUsers.getOrDefault(key, Collections.emptySet()));
+        ids.addAll(resolvedUsers.getOrDefault(key, Collections.emptySet()));
+        return new ArrayList<>(ids);
+    }
+
+    /**
+     * @return {@code false} as long as the users existing when Jenkins started were not all indexed.
+     */
+    public synchronized boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Records the address a user configured, {@code null} if none.
+     */
+    synchronized void configured(@NonNull String userId, @CheckForNull String address) {
+        update(configuredAddresses, configuredUsers, userId, address);
+    }
+
+    /**
+     * Records the address resolvers found for a user, {@code null} if none.
+     */
+    synchronized void resolved(@NonNull String userId, @CheckForNull String address) {
+        update(resolvedAddresses, resolvedUsers, userId, address);
+    }
+
+    /**
+     * Forgets a user altogether.
+     */
+    synchronized void remove(@NonNull String userId) {
+        update(configuredAddresses, configuredUsers, userId, null);
+        update(resolvedAddresses, resolvedUsers, userId, null);
+    }
+
+    private static void update(Map<String, String> addresses, Map<String, Set<String>> users, String userId, String address) {
+        String key = address != null ? normalize(address) : null;
+        String previous = key != null ? addresses.put(userId, key) : addresses.remove(userId);
+        if (previous != null && !previous.equals(key)) {
+            Set<String> ids = users.get(previous);
+            if (ids != null) {
+                ids.remove(userId);
+                if (ids.isEmpty()) {
+                    users.remove(previous);
+                }
+            }
+        }
+        if (key != null) {
+            users.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(userId);
+        }
+    }
+
+    /**
+     * @return the bare address in lower case, or {@code null} if there is none
+     */
+    static @CheckForNull String normalize(@NonNull String address) {
+        String bare = address.trim();
+        try {
+            bare = new InternetAddress(bare).getAddress();
+        } catch (AddressException e) {
+            // not RFC 822, index it as it is
+        }
+        return bare == null || bare.isEmpty() ? null : bare.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Indexes the configured address of a user.
+     */
+    void index(@NonNull User user) {
+        Mailer.UserProperty property = user.getProperty(Mailer.UserProperty.class);
+        configured(user.getId(), property != null ? property.getExplicitlyConfiguredAddress() : null);
+    }
+
+    /**
+     * Indexes all users, without asking resolvers.
+     */
+    void indexAll() {
+        for (User user : User.getAll()) {
+            index(user);
+        }
+        ResolvedAddressIndex resolved = ResolvedAddressIndex.get();
+        if (resolved != null && resolved.isLoaded()) {
+            for (ResolvedAddressIndex.Record record : resolved.getRecords()) {
+                resolved(record.getUserId(), record.getAddress());
+            }
+        }
+        synchronized (this) {
+            ready = true;
+        }
+    }
+
+    /**
+     * @return the number of users with a configured address.
+     */
+    synchronized int size() {
+        return configuredAddresses.size();
+    }
+
+    synchronized void clear() {
+        configuredUsers.clear();
+        resolvedUsers.clear();
+        configuredAddresses.clear();
+        resolvedAddresses.clear();
+        ready = false;
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void indexInBackground() {
+        UserAddressIndex index = get();
+        index.clear();
+        Timer.get().submit(() -> {
+            try {
+                index.indexAll();
+                LOGGER.log(Level.FINE, "Indexed e-mail addresses of {0} users", index.size());
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to index e-mail addresses of users", e);
+            }
+        });
+    }
+
+    /**
+     * Keeps the configured address of a user up to date.
+     */
+    @Extension
+    @Restricted(NoExternalUse.class)
+    public static final class Updater extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof User) {
+                get().index((User) o);
+            }
+        }
+
+        @Override
+        public void onDeleted(Saveable o, XmlFile file) {
+            if (o instanceof User) {
+                get().remove(((User) o).getId());
+            }
+        }
+    }
+}
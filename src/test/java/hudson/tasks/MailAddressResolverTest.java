@@ -27,23 +27,30 @@ import hudson.ExtensionList;
 import hudson.model.Hudson;
 import hudson.model.User;
 import jenkins.model.Jenkins;
+import jenkins.plugins.mailer.tasks.ResolvedAddressCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.jvnet.hudson.test.Issue;
 import org.mockito.MockedStatic;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockStatic;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 /**
  * @author Kohsuke Kawaguchi, ogondza
@@ -63,6 +70,7 @@ class MailAddressResolverTest {
         when(user.getId()).thenReturn("user_id");
 
         descriptor = mock(Mailer.DescriptorImpl.class);
+        ResolvedAddressCache.get().invalidateAll();
     }
 
     @Test
@@ -144,6 +152,49 @@ class MailAddressResolverTest {
         }
     }
 
+    @Test
+    void rememberResolvedAddress() {
+        try (MockedStatic<ExtensionList> mockedExtensionList = mockStatic(ExtensionList.class)) {
+            final MailAddressResolver resolver = mockResolver();
+            when(resolver.findMailAddressFor(user)).thenReturn("a@b.c");
+
+            configure(mockedExtensionList, resolver);
+
+            assertEquals("a@b.c", MailAddressResolver.resolve(user));
+            assertEquals("a@b.c", MailAddressResolver.resolve(user));
+            verify(resolver, times(1)).findMailAddressFor(user);
+
+            new ResolvedAddressCache.Invalidator().onChange(user, null);
+            assertEquals("a@b.c", MailAddressResolver.resolve(user));
+            verify(resolver, times(2)).findMailAddressFor(user);
+        }
+    }
+
+    @Test
+    void resolveAllAsksEachResolverOnce() {
+        try (MockedStatic<ExtensionList> mockedExtensionList = mockStatic(ExtensionList.class)) {
+            final User other = mock(User.class);
+            when(other.getFullName()).thenReturn("Other name");
+            when(other.getId()).thenReturn("other_id");
+
+            final MailAddressResolver batch = mockResolver();
+            when(batch.findMailAddressesFor(any())).thenReturn(Collections.singletonMap(user, "a@b.c"));
+            final MailAddressResolver single = mock(MailAddressResolver.class, withSettings().defaultAnswer(CALLS_REAL_METHODS));
+            doReturn("o@b.c").when(single).findMailAddressFor(other);
+
+            configure(mockedExtensionList, batch, single);
+
+            final Map<User, String> addresses = MailAddressResolver.resolveAll(Arrays.asList(user, other));
+
+            assertEquals(Map.of(user, "a@b.c", other, "o@b.c"), addresses);
+            verify(batch, times(1)).findMailAddressesFor(any());
+            verify(single, never()).findMailAddressFor(user);
+
+            assertEquals(addresses, MailAddressResolver.resolveAll(Arrays.asList(user, other)));
+            verify(batch, times(1)).findMailAddressesFor(any());
+        }
+    }
+
     @Test
     void doResolveWhenUsingExplicitUserEmail() {
         final String testEmail = "very_strange_email@test.case";
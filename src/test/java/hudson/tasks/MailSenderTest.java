@@ -23,6 +23,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
@@ -186,4 +187,33 @@ class MailSenderTest {
             }
         }
     }
+
+    @Test
+    void linksAllWorkspacePathsOfALine() {
+        Pattern wsPattern = Pattern.compile("(" + Pattern.quote("/ws/prj") + ")[/\\\\]?([^:#\\s]*)");
+        MailSender.WorkspaceLinks links = new MailSender.WorkspaceLinks(wsPattern,
+                "http://jenkins/job/prj/ws/", "http://jenkins/job/prj/1/artifact/", path -> path.endsWith(".jar"));
+
+        StringBuilder buf = new StringBuilder();
+        links.append("[javac] /ws/prj/src/$Foo.java:12: error, see /ws/prj/target/app.jar and /ws/prj/a b", buf);
+        buf.append('\n');
+        links.append("nothing to link here", buf);
+        assertEquals("[javac] <http://jenkins/job/prj/ws/src/$Foo.java>:12: error, see <http://jenkins/job/prj/1/artifact/target/app.jar>"
+                + " and <http://jenkins/job/prj/ws/a> b\nnothing to link here", buf.toString());
+    }
+
+    @Test
+    void linksLongLinesInOnePass() {
+        Pattern wsPattern = Pattern.compile("(" + Pattern.quote("/ws/prj") + ")[/\\\\]?([^:#\\s]*)");
+        MailSender.WorkspaceLinks links = new MailSender.WorkspaceLinks(wsPattern, "W/", "A/", path -> false);
+        StringBuilder line = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 50_000; i++) {
+            line.append("/ws/prj/f").append(i).append(' ');
+            expected.append("<W/f").append(i).append("> ");
+        }
+        StringBuilder buf = new StringBuilder();
+        links.append(line.toString(), buf);
+        assertEquals(expected.toString(), buf.toString());
+    }
 }
@@ -40,6 +40,7 @@ import hudson.tasks.Mailer.DescriptorImpl;
 import hudson.util.FormValidation;
 import hudson.util.Secret;
 import jakarta.mail.Address;
+import jakarta.mail.Session;
 import jakarta.mail.internet.InternetAddress;
 import jenkins.model.Jenkins;
 import jenkins.model.JenkinsLocationConfiguration;
@@ -79,6 +80,7 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assumptions.assumeTrue;
@@ -297,6 +299,33 @@ class MailerTest {
         assertNull(d.getAuthentication());
     }
 
+    @Test
+    void globalConfigShowsRateLimitStatistics(JenkinsRule rule) throws Exception {
+        HtmlPage cp = rule.createWebClient().goTo("configure");
+        // inside the advanced section, which is not shown yet
+        assertThat(cp.getWebResponse().getContentAsString(), containsString("e-mails were sent since Jenkins started"));
+    }
+
+    @Test
+    void sessionIsReusedUntilSettingsChange(JenkinsRule rule) {
+        DescriptorImpl d = Mailer.descriptor();
+        d.setSmtpHost("smtp.host");
+        Session session = d.getSharedSession();
+        assertSame(session, d.getSharedSession());
+        assertNotSame(session, d.createSession(), "createSession keeps returning a new session");
+
+        d.setReplyToAddress("foo@bar.com");
+        assertSame(session, d.getSharedSession(), "unrelated settings keep the session");
+
+        d.setSmtpHost("other.host");
+        Session changed = d.getSharedSession();
+        assertNotSame(session, changed);
+        assertEquals("other.host", changed.getProperty("mail.smtp.host"));
+
+        d.setAuthentication(new SMTPAuthentication("user", Secret.fromString("pass")));
+        assertNotSame(changed, d.getSharedSession());
+    }
+
     @Test
     void authenticationFormValidation(JenkinsRule rule) {
         DescriptorImpl d = Mailer.descriptor();
@@ -0,0 +1,58 @@
+package jenkins.plugins.mailer.tasks;
+
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.InternetAddress;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AddressCacheTest {
+
+    private final AddressCache cache = new AddressCache();
+
+    @Test
+    void parsesOnceAndHandsOutCopies() throws Exception {
+        InternetAddress first = cache.parse("Jöhn Doe <john@example.com>", "UTF-8", null);
+        assertEquals("john@example.com", first.getAddress());
+        assertEquals("Jöhn Doe ", first.getPersonal());
+        first.setPersonal("Someone else");
+
+        InternetAddress second = cache.parse("Jöhn Doe <john@example.com>", "UTF-8", null);
+        assertNotSame(first, second);
+        assertEquals("Jöhn Doe ", second.getPersonal());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void keysOnCharsetAndDefaultSuffix() throws Exception {
+        assertNull(cache.parse("john", "UTF-8", null));
+        assertNull(cache.parse("john", "UTF-8", "example.com"));
+        assertEquals("john@example.com", cache.parse("john", "UTF-8", "@example.com").getAddress());
+        assertEquals("john@example.org", cache.parse("john", "UTF-8", "@example.org").getAddress());
+        assertEquals("john@example.org", cache.parse("john", "ISO-8859-1", "@example.org").getAddress());
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    void doesNotRememberMalformedAddresses() {
+        assertThrows(AddressException.class, () -> cache.parse("<john@example.com", "UTF-8", null));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() throws Exception {
+        int maxEntries = AddressCache.MAX_ENTRIES;
+        AddressCache.MAX_ENTRIES = 2;
+        try {
+            cache.parse("a@example.com", "UTF-8", null);
+            cache.parse("b@example.com", "UTF-8", null);
+            cache.parse("c@example.com", "UTF-8", null);
+            assertEquals(2, cache.size());
+        } finally {
+            AddressCache.MAX_ENTRIES = maxEntries;
+        }
+    }
+}
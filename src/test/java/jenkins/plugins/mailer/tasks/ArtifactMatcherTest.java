@@ -0,0 +1,51 @@
+package jenkins.plugins.mailer.tasks;
+
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ArtifactMatcherTest {
+
+    @Test
+    void matchesLikeSelectorUtils() {
+        String includes = "target/*.jar, **/reports/**,dist/ docs/index.html lib/**/*.so";
+        ArtifactMatcher matcher = ArtifactMatcher.compile(includes, null);
+        String[] paths = {
+            "target/app.jar", "target/sub/app.jar", "target/app.war",
+            "module/build/reports/test.xml", "reports/x", "dist/a/b/c", "dist",
+            "docs/index.html", "docs/other.html", "lib/x/y/native.so", "lib/native.so", "src/Foo.java",
+        };
+        for (String path : paths) {
+            assertEquals(matchesAny(includes, path), matcher.match(path) != null, path);
+        }
+    }
+
+    @Test
+    void excludesWin() {
+        ArtifactMatcher matcher = ArtifactMatcher.compile("target/**", "**/*.tmp, target/cache/");
+        assertEquals("target/**", matcher.match("target/app.jar"));
+        assertNull(matcher.match("target/app.tmp"));
+        assertNull(matcher.match("target/cache/index"));
+    }
+
+    @Test
+    void matchesNothingWithoutPatterns() {
+        assertNull(ArtifactMatcher.compile("", null).match("target/app.jar"));
+    }
+
+    /** What artifactMatches used to do for every path. */
+    private static boolean matchesAny(String includes, String path) {
+        for (String include : includes.split("[, ]+")) {
+            String pattern = include;
+            if (pattern.endsWith("/")) {
+                pattern += "**";
+            }
+            if (SelectorUtils.matchPath(pattern, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
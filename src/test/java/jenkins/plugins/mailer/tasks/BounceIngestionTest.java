@@ -0,0 +1,215 @@
+package jenkins.plugins.mailer.tasks;
+
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.tasks.MailMessageIdAction;
+import hudson.util.RunList;
+import jenkins.model.Jenkins;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.MockedStatic;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+class BounceIngestionTest {
+
+    @TempDir
+    File dir;
+
+    private final BounceIngestion ingestion = new BounceIngestion();
+    private final Jenkins jenkins = mock(Jenkins.class);
+    private MockedStatic<Jenkins> mockedJenkins;
+
+    @BeforeEach
+    void setUp() {
+        mockedJenkins = mockStatic(Jenkins.class);
+        mockedJenkins.when(Jenkins::getInstanceOrNull).thenReturn(jenkins);
+        job("job", new RunList());
+        job("folder/job", new RunList());
+    }
+
+    @AfterEach
+    void tearDown() {
+        mockedJenkins.close();
+    }
+
+    private Job job(String fullName, RunList builds) {
+        Job job = mock(Job.class);
+        when(job.getFullName()).thenReturn(fullName);
+        when(job.getBuilds()).thenReturn(builds);
+        when(jenkins.getItemByFullName(fullName, Job.class)).thenReturn(job);
+        return job;
+    }
+
+    private static String bounce(String recipient, String status, String job) {
+        return "From: MAILER-DAEMON@example.com\n"
+                + "To: jenkins@example.com\n"
+                + "Subject: Undelivered Mail Returned to Sender\n"
+                + "MIME-Version: 1.0\n"
+                + "Content-Type: multipart/report; report-type=delivery-status; boundary=\"BOUNDARY\"\n"
+                + "\n"
+                + "--BOUNDARY\n"
+                + "Content-Type: text/plain\n"
+                + "\n"
+                + "Your message could not be delivered.\n"
+                + "\n"
+                + "--BOUNDARY\n"
+                + "Content-Type: message/delivery-status\n"
+                + "\n"
+                + "Reporting-MTA: dns; mx.example.com\n"
+                + "\n"
+                + "Final-Recipient: rfc822; " + recipient + "\n"
+                + "Action: failed\n"
+                + "Status: " + status + "\n"
+                + "Diagnostic-Code: smtp; 550 5.1.1 <" + recipient + ">:\n"
+                + " Recipient address rejected\n"
+                + "\n"
+                + "--BOUNDARY\n"
+                + "Content-Type: text/rfc822-headers\n"
+                + "\n"
+                + "From: jenkins@example.com\n"
+                + "Message-ID: <1@example.com>\n"
+                + (job != null ? "X-Jenkins-Job: " + job + "\n" : "")
+                + "Subject: Build failed in Jenkins\n"
+                + "\n"
+                + "--BOUNDARY--\n";
+    }
+
+    private static String mbox(String... messages) {
+        StringBuilder b = new StringBuilder();
+        for (String message : messages) {
+            b.append("From MAILER-DAEMON Thu Oct  1 10:00:00 2026\n").append(message).append('\n');
+        }
+        return b.toString();
+    }
+
+    private File cursorFile() {
+        return new File(dir, "cursor.properties");
+    }
+
+    @Test
+    void readsPermanentFailuresOfJenkinsMail() throws Exception {
+        File mbox = new File(dir, "bounces.mbox");
+        Files.writeString(mbox.toPath(), mbox(
+                bounce("alice@example.com", "5.1.1", "folder/job"),
+                bounce("bob@example.com", "4.2.2", "folder/job"),
+                bounce("carol@example.com", "5.1.1", null),
+                bounce("dave@example.com", "5.1.1", "other/job")), StandardCharsets.UTF_8);
+        Map<String, String> failed = new LinkedHashMap<>();
+        BounceIngestion.Cursor cursor = BounceIngestion.Cursor.load(cursorFile(), mbox);
+        assertEquals(3, ingestion.readMbox(mbox, cursor, failed), "the last message may still be being written");
+        assertEquals(1, ingestion.readMbox(mbox, cursor, failed));
+        assertEquals(List.of("alice@example.com"), List.copyOf(failed.keySet()), "neither mail of no job nor of an unknown one");
+        String reason = failed.get("alice@example.com");
+        assertTrue(reason.startsWith("Bounced with 5.1.1: 550 5.1.1 <alice@example.com>: Recipient address rejected"), reason);
+        assertTrue(reason.endsWith("(folder/job)"), reason);
+    }
+
+    @Test
+    void namesTheBuildWhichSentTheMail() throws Exception {
+        Run build = mock(Run.class);
+        when(build.getAction(MailMessageIdAction.class)).thenReturn(new MailMessageIdAction("<1@example.com>"));
+        when(build.getFullDisplayName()).thenReturn("job #1");
+        job("job", RunList.fromRuns((Collection) List.of(build)));
+        File mbox = new File(dir, "bounces.mbox");
+        Files.writeString(mbox.toPath(), mbox(bounce("alice@example.com", "5.1.1", "job")), StandardCharsets.UTF_8);
+        Map<String, String> failed = new LinkedHashMap<>();
+        BounceIngestion.Cursor cursor = BounceIngestion.Cursor.load(cursorFile(), mbox);
+        cursor.mbox(0, mbox.length());
+        assertEquals(1, ingestion.readMbox(mbox, cursor, failed));
+        assertTrue(failed.get("alice@example.com").endsWith("(job #1)"), failed.get("alice@example.com"));
+    }
+
+    @Test
+    void resumesMboxWhereItStopped() throws Exception {
+        File mbox = new File(dir, "bounces.mbox");
+        Files.writeString(mbox.toPath(), mbox(bounce("alice@example.com", "5.1.1", "job"), bounce("bob@example.com", "5.1.1", "job")), StandardCharsets.UTF_8);
+        BounceIngestion.MAX_MESSAGES = 1;
+        try {
+            Map<String, String> failed = new LinkedHashMap<>();
+            BounceIngestion.Cursor cursor = BounceIngestion.Cursor.load(cursorFile(), mbox);
+            assertEquals(1, ingestion.readMbox(mbox, cursor, failed));
+            cursor.save();
+            assertEquals(List.of("alice@example.com"), List.copyOf(failed.keySet()));
+
+            failed.clear();
+            cursor = BounceIngestion.Cursor.load(cursorFile(), mbox);
+            assertEquals(1, ingestion.readMbox(mbox, cursor, failed), "the file did not grow since the previous run");
+            cursor.save();
+            assertEquals(List.of("bob@example.com"), List.copyOf(failed.keySet()));
+        } finally {
+            BounceIngestion.MAX_MESSAGES = 1000;
+        }
+
+        Map<String, String> failed = new LinkedHashMap<>();
+        BounceIngestion.Cursor cursor = BounceIngestion.Cursor.load(cursorFile(), mbox);
+        assertEquals(0, ingestion.readMbox(mbox, cursor, failed));
+        String carol = mbox(bounce("carol@example.com", "5.1.1", "job"));
+        int half = carol.indexOf("Action:");
+        Files.writeString(mbox.toPath(), carol.substring(0, half), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        assertEquals(0, ingestion.readMbox(mbox, cursor, failed), "the message is still being written");
+        Files.writeString(mbox.toPath(), carol.substring(half) + mbox(bounce("dave@example.com", "5.1.1", "job")),
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        assertEquals(1, ingestion.readMbox(mbox, cursor, failed), "carol is followed by another message");
+        assertEquals(1, ingestion.readMbox(mbox, cursor, failed), "dave did not grow since");
+        assertEquals(List.of("carol@example.com", "dave@example.com"), List.copyOf(failed.keySet()));
+    }
+
+    @Test
+    void resumesMaildirWhereItStopped() throws Exception {
+        File maildir = new File(dir, "Maildir");
+        File fresh = new File(maildir, "new");
+        File seen = new File(maildir, "cur");
+        assertTrue(fresh.mkdirs() && seen.mkdirs());
+        File first = new File(seen, "1000.a.host:2,S");
+        Files.writeString(first.toPath(), bounce("alice@example.com", "5.1.1", "job"), StandardCharsets.UTF_8);
+        assertTrue(first.setLastModified(1_000_000));
+        File second = new File(fresh, "2000.b.host");
+        Files.writeString(second.toPath(), bounce("bob@example.com", "5.1.1", "job"), StandardCharsets.UTF_8);
+        assertTrue(second.setLastModified(2_000_000));
+
+        Map<String, String> failed = new LinkedHashMap<>();
+        BounceIngestion.Cursor cursor = BounceIngestion.Cursor.load(cursorFile(), maildir);
+        assertEquals(2, ingestion.readMaildir(maildir, cursor, failed));
+        cursor.save();
+        assertEquals(List.of("alice@example.com", "bob@example.com"), List.copyOf(failed.keySet()));
+
+        // a mail client moving the message to cur changes its name and modification time, but not its unique name
+        File moved = new File(seen, "2000.b.host:2,S");
+        assertTrue(second.renameTo(moved));
+        assertTrue(moved.setLastModified(4_000_000));
+        File third = new File(fresh, "3000.c.host");
+        Files.writeString(third.toPath(), bounce("carol@example.com", "5.1.1", "job"), StandardCharsets.UTF_8);
+        assertTrue(third.setLastModified(3_000_000));
+        // delivered with a modification time older than the messages read already
+        File fourth = new File(fresh, "500.d.host");
+        Files.writeString(fourth.toPath(), bounce("dave@example.com", "5.1.1", "job"), StandardCharsets.UTF_8);
+        assertTrue(fourth.setLastModified(500_000));
+        failed.clear();
+        cursor = BounceIngestion.Cursor.load(cursorFile(), maildir);
+        assertEquals(2, ingestion.readMaildir(maildir, cursor, failed));
+        assertEquals(List.of("dave@example.com", "carol@example.com"), List.copyOf(failed.keySet()));
+        cursor.save();
+
+        assertTrue(first.delete());
+        cursor = BounceIngestion.Cursor.load(cursorFile(), maildir);
+        assertEquals(0, ingestion.readMaildir(maildir, cursor, failed));
+        assertEquals(3, cursor.processed.size(), "deleted messages are forgotten");
+    }
+}
@@ -0,0 +1,56 @@
+package jenkins.plugins.mailer.tasks;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DomainTrieTest {
+
+    @Test
+    void parsesRules() {
+        assertArrayEquals(new String[] {"example.com", "example.org", "example.net", "ci.example.com"},
+                DomainTrie.domains("Example.COM\n\n  @example.org  \n*.example.net # comment\n# comment\n.ci.example.com.\n"));
+        assertArrayEquals(new String[0], DomainTrie.domains(null));
+    }
+
+    @Test
+    void matchesSubdomains() {
+        DomainTrie trie = new DomainTrie(null, "example.com");
+        assertEquals(DomainTrie.Rule.DENY, trie.lookup("example.com"));
+        assertEquals(DomainTrie.Rule.DENY, trie.lookup("mail.Example.com."));
+        assertNull(trie.lookup("notexample.com"));
+        assertNull(trie.lookup("com"));
+        assertTrue(trie.isAllowed("example.org"));
+        assertTrue(trie.isAllowed(null));
+        assertFalse(trie.isAllowed("a.b.example.com"));
+    }
+
+    @Test
+    void longestMatchWins() {
+        DomainTrie trie = new DomainTrie("ci.example.com", "example.com");
+        assertFalse(trie.isAllowed("example.com"));
+        assertFalse(trie.isAllowed("www.example.com"));
+        assertTrue(trie.isAllowed("ci.example.com"));
+        assertTrue(trie.isAllowed("eu.ci.example.com"));
+        assertFalse(trie.isAllowed("example.org"), "only allowed domains when some are listed");
+        assertFalse(trie.isAllowed(null));
+    }
+
+    @Test
+    void denyingWinsOverAllowingTheSameDomain() {
+        DomainTrie trie = new DomainTrie("example.com\nexample.org", "example.com");
+        assertFalse(trie.isAllowed("example.com"));
+        assertTrue(trie.isAllowed("example.org"));
+    }
+
+    @Test
+    void emptyRulesAllowEverything() {
+        DomainTrie trie = new DomainTrie("# nothing yet", null);
+        assertTrue(trie.isEmpty());
+        assertTrue(trie.isAllowed("example.com"));
+    }
+}
@@ -0,0 +1,96 @@
+package jenkins.plugins.mailer.tasks;
+
+import hudson.model.Run;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LogExcerptTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void readsWholeShortLog() throws Exception {
+        File log = write("first\r\nsecond\nthird\n");
+        assertEquals(Arrays.asList("first", "second", "third"), LogExcerpt.read(log, StandardCharsets.UTF_8, 10, 0));
+    }
+
+    @Test
+    void readsLastLinesOfLongLog() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        // no line break at the very end
+        text.append("last");
+        File log = write(text.toString());
+
+        List<String> lines = LogExcerpt.read(log, StandardCharsets.UTF_8, 3, 0);
+        assertEquals(3, lines.size());
+        assertThat(lines.get(0), startsWith("[...truncated "));
+        assertEquals(Arrays.asList("line 9999", "last"), lines.subList(1, lines.size()));
+    }
+
+    @Test
+    void byteLimitDropsCutLine() throws Exception {
+        File log = write("aaaaaaaaaa\nbbbbbbbbbb\ncccccccccc\n");
+        // the limit ends in the middle of the second line
+        List<String> lines = LogExcerpt.read(log, StandardCharsets.UTF_8, 10, 15);
+        assertEquals(Arrays.asList("cccccccccc"), lines.subList(1, lines.size()));
+    }
+
+    @Test
+    void nonPositiveByteLimitFallsBackToDefault() throws Exception {
+        StringBuilder text = new StringBuilder();
+        while (text.length() <= 2 * LogExcerpt.DEFAULT_MAX_BYTES) {
+            text.append("0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcde\n");
+        }
+        File log = write(text.toString());
+        List<String> lines = LogExcerpt.read(log, StandardCharsets.UTF_8, Integer.MAX_VALUE, 0);
+        assertThat(lines.get(0), startsWith("[...truncated "));
+        // the first line of the window is dropped, as it cannot be told whether it is complete
+        assertEquals(LogExcerpt.DEFAULT_MAX_BYTES / 64 - 1, lines.size() - 1);
+    }
+
+    @Test
+    void keepsMultibyteCharactersAcrossChunks() throws Exception {
+        List<String> expected = new ArrayList<>(Collections.nCopies(2000, "été ☃ 😀"));
+        File log = write(String.join("\n", expected) + "\n");
+        assertEquals(expected, LogExcerpt.read(log, StandardCharsets.UTF_8, 5000, 0));
+    }
+
+    @Test
+    void otherRunsAreReadThroughTheirLogApi() throws Exception {
+        Run<?, ?> run = mock(Run.class);
+        when(run.getLog(3)).thenReturn(Arrays.asList("a", "b", "c"));
+        assertEquals(Arrays.asList("a", "b", "c"), LogExcerpt.tail(run, 3, 0));
+        verify(run, never()).getLogFile();
+    }
+
+    @Test
+    void emptyLog() throws Exception {
+        assertEquals(Collections.emptyList(), LogExcerpt.read(write(""), StandardCharsets.UTF_8, 10, 0));
+    }
+
+    private File write(String text) throws Exception {
+        File log = new File(dir, "log");
+        Files.write(log.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return log;
+    }
+}
@@ -27,6 +27,8 @@ import hudson.ExtensionList;
 import hudson.model.AbstractBuild;
 import hudson.model.BuildListener;
 import hudson.model.Hudson;
+import hudson.model.Run;
+import hudson.model.TaskListener;
 import jakarta.mail.internet.AddressException;
 import jakarta.mail.internet.InternetAddress;
 import jenkins.model.Jenkins;
@@ -35,6 +37,7 @@ import org.junit.jupiter.api.Test;
 import org.mockito.MockedStatic;
 import org.mockito.Mockito;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
@@ -94,6 +97,7 @@ class MailAddressFilterTest {
 
             MailAddressFilter filter = Mockito.mock(MailAddressFilter.class);
             Mockito.when(filter.shouldFilter(build, listener, filteredAddress)).thenReturn(true);
+            Mockito.when(filter.filterAll(Mockito.any(), Mockito.any(), Mockito.anySet())).thenCallRealMethod();
 
             configure(List.of(filter));
 
@@ -105,6 +109,56 @@ class MailAddressFilterTest {
         }
     }
 
+    // A filter checking sets at once gets all recipients the previous filters kept in one call
+    @Test
+    void testFilterAll() throws Exception {
+        try (MockedStatic<Jenkins> mocked = Mockito.mockStatic(Jenkins.class)) {
+            mocked.when(Jenkins::get).thenReturn(jenkins);
+
+            InternetAddress filteredAddress = new InternetAddress("systemUser@example.com");
+            InternetAddress localAddress = new InternetAddress("user2@local");
+
+            Set<InternetAddress> rcp = getRecipients();
+            rcp.add(filteredAddress);
+
+            MailAddressFilter filter = Mockito.mock(MailAddressFilter.class);
+            Mockito.when(filter.shouldFilter(build, listener, filteredAddress)).thenReturn(true);
+            Mockito.when(filter.filterAll(Mockito.any(), Mockito.any(), Mockito.anySet())).thenCallRealMethod();
+            LocalFilter batching = new LocalFilter();
+
+            configure(List.of(filter, batching));
+
+            Set<InternetAddress> filtered = MailAddressFilter.filterRecipients(build, listener, rcp);
+
+            assertEquals(rcp.size() - 2, filtered.size());
+            assertFalse(filtered.contains(filteredAddress));
+            assertFalse(filtered.contains(localAddress));
+            assertEquals(List.of(rcp.size() - 1), batching.calls);
+        }
+    }
+
+    private static class LocalFilter extends MailAddressFilter {
+
+        private final List<Integer> calls = new ArrayList<>();
+
+        @Override
+        public Set<InternetAddress> filterAll(Run<?, ?> build, TaskListener listener, Set<InternetAddress> addresses) {
+            calls.add(addresses.size());
+            Set<InternetAddress> filtered = new HashSet<>();
+            for (InternetAddress address : addresses) {
+                if (address.getAddress().endsWith("@local")) {
+                    filtered.add(address);
+                }
+            }
+            return filtered;
+        }
+
+        @Override
+        public boolean shouldFilter(Run<?, ?> build, TaskListener listener, InternetAddress address) {
+            throw new AssertionError("addresses are to be checked at once");
+        }
+    }
+
     private Set<InternetAddress> getRecipients() throws AddressException {
         InternetAddress[] addr = InternetAddress.parse("user1, user2@local, user2@example.com", false);
         return new HashSet<>(Arrays.asList(addr));
@@ -0,0 +1,67 @@
+package jenkins.plugins.mailer.tasks;
+
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MailBodyTest {
+
+    private final Session session = Session.getInstance(new Properties());
+
+    @Test
+    void smallBodyStaysInMemory() throws Exception {
+        MailBody body = new MailBody("UTF-8");
+        body.append("Build failed: ").append("été").append('\n');
+        assertFalse(body.isSpilled());
+
+        MimeMessage read = roundTrip(body);
+        assertEquals("Build failed: été\n", read.getContent().toString().replace("\r\n", "\n"));
+        assertTrue(read.getContentType().startsWith("text/plain; charset=UTF-8"), read.getContentType());
+    }
+
+    @Test
+    void largeBodyMovesToTemporaryFile() throws Exception {
+        StringBuilder expected = new StringBuilder();
+        MailBody body = new MailBody("ISO-8859-1");
+        for (int i = 0; i < MailBody.MEMORY_LIMIT / 10; i++) {
+            String line = "line " + i + " é\n";
+            body.append(line);
+            expected.append(line);
+        }
+        assertTrue(body.isSpilled());
+        assertEquals(expected.length(), body.size());
+
+        assertEquals(expected.toString(), roundTrip(body).getContent().toString().replace("\r\n", "\n"));
+    }
+
+    @Test
+    void cannotAppendToFinishedBody() throws Exception {
+        MailBody body = new MailBody("UTF-8");
+        body.setTo(new MimeMessage(session));
+        assertThrows(IllegalStateException.class, () -> body.append("late"));
+    }
+
+    @Test
+    void rejectsUnknownCharset() {
+        assertThrows(UnsupportedEncodingException.class, () -> new MailBody("no-such-charset"));
+    }
+
+    private MimeMessage roundTrip(MailBody body) throws Exception {
+        MimeMessage msg = new MimeMessage(session);
+        body.setTo(msg);
+        msg.saveChanges();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        msg.writeTo(out);
+        return new MimeMessage(session, new ByteArrayInputStream(out.toByteArray()));
+    }
+}
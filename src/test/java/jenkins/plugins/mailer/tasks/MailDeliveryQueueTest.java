@@ -0,0 +1,100 @@
+package jenkins.plugins.mailer.tasks;
+
+import jakarta.mail.Message;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.Test;
+import org.jvnet.mock_javamail.Mailbox;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MailDeliveryQueueTest {
+
+    @Test
+    void deliversWithoutChangingMessageId() throws Exception {
+        InternetAddress to = new InternetAddress("queued@example.com");
+        Mailbox inbox = Mailbox.get(to);
+        inbox.clear();
+
+        MimeMessage msg = new MimeMessage(Session.getInstance(new Properties(System.getProperties())));
+        msg.setRecipient(Message.RecipientType.TO, to);
+        msg.setSubject("queued");
+        msg.setText("queued body");
+        msg.saveChanges();
+        String messageId = msg.getMessageID();
+
+        new MailDeliveryQueue(1, 1).submit(msg);
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (inbox.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, inbox.size());
+        assertEquals(messageId, inbox.get(0).getHeader("Message-ID")[0]);
+    }
+
+    @Test
+    void capsConcurrentDeliveriesOnVirtualThreads() throws Exception {
+        assertCapsConcurrentDeliveries(new MailDeliveryQueue(2, 100, true));
+    }
+
+    @Test
+    void capsConcurrentDeliveriesOnPlatformThreads() throws Exception {
+        MailDeliveryQueue queue = new MailDeliveryQueue(2, 100, false);
+        assertFalse(queue.isVirtual());
+        assertCapsConcurrentDeliveries(queue);
+    }
+
+    @Test
+    void refusesTasksWhenFull() throws Exception {
+        MailDeliveryQueue queue = new MailDeliveryQueue(1, 1, false);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+        Runnable blocked = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                done.countDown();
+            }
+        };
+        assertTrue(queue.tryExecute(blocked));
+        assertTrue(queue.tryExecute(blocked));
+        AtomicInteger ran = new AtomicInteger();
+        assertFalse(queue.tryExecute(ran::incrementAndGet), "one running and one waiting fill the queue");
+        assertEquals(0, ran.get());
+        release.countDown();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+    }
+
+    private static void assertCapsConcurrentDeliveries(MailDeliveryQueue queue) throws Exception {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(50);
+        for (int i = 0; i < 50; i++) {
+            queue.execute(() -> {
+                peak.accumulateAndGet(active.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    active.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertTrue(peak.get() <= 2, "at most 2 deliveries at a time, but saw " + peak.get());
+        assertEquals(0, queue.getQueueLength());
+    }
+}
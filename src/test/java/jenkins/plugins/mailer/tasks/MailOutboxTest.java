@@ -0,0 +1,73 @@
+package jenkins.plugins.mailer.tasks;
+
+import jakarta.mail.Address;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MailOutboxTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void backoffGrowsExponentiallyUpToTheCap() {
+        for (int attempt = 1; attempt <= 40; attempt++) {
+            long window = Math.min(MailOutbox.MAX_DELAY, MailOutbox.BASE_DELAY << Math.min(attempt - 1, 30));
+            assertThat(MailOutbox.backoff(attempt), allOf(greaterThanOrEqualTo(window / 2), lessThanOrEqualTo(window)));
+        }
+    }
+
+    @Test
+    void onlyTransientFailuresAreRetried() throws Exception {
+        Address a = new InternetAddress("a@example.com");
+        Address b = new InternetAddress("b@example.com");
+        Address[] none = new Address[0];
+
+        assertTrue(MailOutbox.isRetryable(new MessagingException("Connection refused")));
+        assertTrue(MailOutbox.isRetryable(new SendFailedException("busy", null, none, new Address[] {a}, none)));
+
+        assertFalse(MailOutbox.isRetryable(new SendFailedException("No recipient addresses")));
+        assertFalse(MailOutbox.isRetryable(new SendFailedException("rejected", null, none, none, new Address[] {a})));
+        assertFalse(MailOutbox.isRetryable(new SendFailedException("partial", null, new Address[] {a}, new Address[] {b}, none)));
+    }
+
+    @Test
+    void spooledMessageKeepsItsHeaders() throws Exception {
+        Session session = Session.getInstance(new Properties());
+        MimeMessage msg = new MimeMessage(session);
+        msg.setRecipient(Message.RecipientType.TO, new InternetAddress("spooled@example.com"));
+        msg.setSubject("spooled");
+        msg.setText("spooled body");
+        msg.saveChanges();
+
+        MailOutbox outbox = new MailOutbox(dir);
+        File file = outbox.write(msg).getFile();
+
+        assertTrue(file.isFile());
+        assertEquals(1, outbox.getPendingCount());
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            MimeMessage read = new MimeMessage(session, in);
+            assertEquals(msg.getMessageID(), read.getMessageID());
+            assertEquals("spooled", read.getSubject());
+        }
+    }
+}
@@ -27,9 +27,11 @@ import hudson.tasks.Mailer;
 import jakarta.mail.Address;
 import jakarta.mail.Message;
 import jakarta.mail.Transport;
+import jakarta.mail.internet.InternetAddress;
 import jakarta.mail.internet.MimeMessage;
 import jakarta.mail.internet.MimeMultipart;
 import jenkins.model.JenkinsLocationConfiguration;
+import org.jenkinsci.main.modules.instance_identity.InstanceIdentity;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.jvnet.hudson.test.Issue;
@@ -43,6 +45,7 @@ import java.security.KeyFactory;
 import java.security.PublicKey;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.Base64;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -98,6 +101,14 @@ class MimeMessageBuilderTest {
         assertNotNull(publicKey);
     }
 
+    @Test
+    void test_instance_identity_matches() throws Exception {
+        String first = new MimeMessageBuilder().addRecipients(X).buildMimeMessage().getHeader("X-Instance-Identity")[0];
+        String second = new MimeMessageBuilder().addRecipients(Y).buildMimeMessage().getHeader("X-Instance-Identity")[0];
+        assertEquals(first, second);
+        assertEquals(Base64.getEncoder().encodeToString(InstanceIdentity.get().getPublic().getEncoded()), second);
+    }
+
     @Test
     @Issue("JENKINS-26758")
     void test_charset_utf8() throws Exception {
@@ -175,6 +186,26 @@ class MimeMessageBuilderTest {
         assertEquals("tom.zzzz@gmail.com", recipients[2].toString());
     }
 
+    @Test
+    void test_addRecipients_parsed() throws Exception {
+        MimeMessageBuilder messageBuilder = new MimeMessageBuilder().setDefaultSuffix("@gmail.com");
+
+        Set<InternetAddress> parsed = messageBuilder.toAddresses("tom.xxxx, tom.yyyy@gmail.com tom.xxxx@gmail.com");
+        assertEquals(2, parsed.size());
+        messageBuilder.addRecipients(parsed);
+        messageBuilder.addRecipients(messageBuilder.toAddresses("TOM.YYYY@gmail.com"));
+        messageBuilder.addRecipients(messageBuilder.toAddresses(Z), Message.RecipientType.CC);
+
+        MimeMessage mimeMessage = messageBuilder.buildMimeMessage();
+        Address[] to = mimeMessage.getRecipients(Message.RecipientType.TO);
+        assertEquals(2, to.length);
+        assertEquals(X, to[0].toString());
+        assertEquals(Y, to[1].toString());
+        Address[] cc = mimeMessage.getRecipients(Message.RecipientType.CC);
+        assertEquals(1, cc.length);
+        assertEquals(Z, cc[0].toString());
+    }
+
     @Test
     @Issue("JENKINS-32301")
     void testMultipleReplyToAddress() throws Exception {
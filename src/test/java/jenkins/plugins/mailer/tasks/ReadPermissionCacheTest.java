@@ -0,0 +1,174 @@
+package jenkins.plugins.mailer.tasks;
+
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.User;
+import hudson.security.ACL;
+import hudson.security.AuthorizationStrategy;
+import hudson.security.SecurityRealm;
+import jenkins.model.Jenkins;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings("rawtypes")
+class ReadPermissionCacheTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final ReadPermissionCache cache = new ReadPermissionCache(now::get);
+    private final Jenkins jenkins = mock(Jenkins.class);
+    private final ACL acl = mock(ACL.class);
+    private final AbstractBuild build = mock(AbstractBuild.class);
+    private MockedStatic<Jenkins> mockedJenkins;
+
+    @BeforeEach
+    void setUp() {
+        mockedJenkins = mockStatic(Jenkins.class);
+        mockedJenkins.when(Jenkins::get).thenReturn(jenkins);
+        when(jenkins.getSecurityRealm()).thenReturn(mock(SecurityRealm.class));
+        when(jenkins.getAuthorizationStrategy()).thenReturn(mock(AuthorizationStrategy.class));
+        AbstractProject project = mock(AbstractProject.class);
+        when(project.getFullName()).thenReturn("folder/job");
+        when(build.getParent()).thenReturn(project);
+        when(build.getACL()).thenReturn(acl);
+    }
+
+    @AfterEach
+    void tearDown() {
+        mockedJenkins.close();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void remembersDecisionsUntilTheyExpire() {
+        User alice = user("alice");
+        Authentication auth = alice.impersonate2();
+        when(acl.hasPermission2(auth, Item.READ)).thenReturn(true);
+
+        assertEquals(ReadPermissionCache.Outcome.GRANTED, cache.check(alice, build).getOutcome());
+        assertEquals(ReadPermissionCache.Outcome.GRANTED, cache.check(alice, build).getOutcome());
+        verify(acl, times(1)).hasPermission2(auth, Item.READ);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        when(acl.hasPermission2(auth, Item.READ)).thenReturn(false);
+        now.addAndGet(ReadPermissionCache.TTL);
+        assertEquals(ReadPermissionCache.Outcome.DENIED, cache.check(alice, build).getOutcome());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void remembersFailuresToImpersonate() {
+        User ghost = mock(User.class);
+        when(ghost.getId()).thenReturn("ghost");
+        when(ghost.impersonate2()).thenThrow(new UsernameNotFoundException("who?"));
+        User locked = mock(User.class);
+        when(locked.getId()).thenReturn("locked");
+        when(locked.impersonate2()).thenThrow(new BadCredentialsException("locked out"));
+
+        assertEquals(ReadPermissionCache.Outcome.UNKNOWN_USER, cache.check(ghost, build).getOutcome());
+        assertEquals(ReadPermissionCache.Outcome.UNKNOWN_USER, cache.check(ghost, build).getOutcome());
+        verify(ghost, times(1)).impersonate2();
+        ReadPermissionCache.Decision decision = cache.check(locked, build);
+        assertEquals(ReadPermissionCache.Outcome.UNAUTHORIZED, decision.getOutcome());
+        assertEquals("locked out", decision.getMessage());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void forgetsDecisionsWhenSecurityIsReconfigured() {
+        User alice = user("alice");
+        when(acl.hasPermission2(alice.impersonate2(), Item.READ)).thenReturn(true);
+        cache.check(alice, build);
+        assertEquals(1, cache.size());
+
+        when(jenkins.getAuthorizationStrategy()).thenReturn(mock(AuthorizationStrategy.class));
+        cache.check(alice, build);
+        assertEquals(2, cache.getMissCount());
+
+        when(jenkins.getSecurityRealm()).thenReturn(mock(SecurityRealm.class));
+        cache.check(alice, build);
+        assertEquals(3, cache.getMissCount());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void forgetsDecisionsAboutSavedUsersAndItems() {
+        User alice = user("alice");
+        User bob = user("bob");
+        cache.check(alice, build);
+        cache.check(bob, build);
+        assertEquals(2, cache.size());
+
+        cache.invalidateUser("alice");
+        assertEquals(1, cache.size());
+        cache.check(bob, build);
+        assertEquals(1, cache.getHitCount());
+
+        cache.invalidateItem("fold");
+        assertEquals(1, cache.size(), "only the jobs in a folder are dropped, not those of a similar name");
+        cache.invalidateItem("folder");
+        assertEquals(0, cache.size());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void forgetsAllDecisionsWhenTheGlobalConfigurationIsSaved() {
+        ReadPermissionCache shared = ReadPermissionCache.get();
+        try {
+            shared.check(user("alice"), build);
+            assertEquals(1, shared.size());
+            // for example a permission granted in place by the authorization strategy
+            new ReadPermissionCache.Invalidator().onChange(jenkins, null);
+            assertEquals(0, shared.size());
+        } finally {
+            shared.invalidateAll();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void evictsLeastRecentlyUsed() {
+        int maxEntries = ReadPermissionCache.MAX_ENTRIES;
+        ReadPermissionCache.MAX_ENTRIES = 2;
+        try {
+            User alice = user("alice");
+            User bob = user("bob");
+            User carol = user("carol");
+            cache.check(alice, build);
+            cache.check(bob, build);
+            cache.check(alice, build);
+            cache.check(carol, build);
+            assertEquals(2, cache.size());
+            cache.check(alice, build);
+            assertEquals(2, cache.getHitCount());
+            cache.check(bob, build);
+            assertEquals(4, cache.getMissCount());
+        } finally {
+            ReadPermissionCache.MAX_ENTRIES = maxEntries;
+        }
+    }
+
+    private static User user(String id) {
+        User user = mock(User.class);
+        when(user.getId()).thenReturn(id);
+        when(user.impersonate2()).thenReturn(mock(Authentication.class));
+        return user;
+    }
+}
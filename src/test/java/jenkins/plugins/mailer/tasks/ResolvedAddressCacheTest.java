@@ -0,0 +1,139 @@
+package jenkins.plugins.mailer.tasks;
+
+import hudson.tasks.MailAddressResolver;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class ResolvedAddressCacheTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final ResolvedAddressCache cache = new ResolvedAddressCache(now::get);
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private Supplier<ResolvedAddressCache.Resolution> resolver(String address) {
+        return () -> {
+            calls.incrementAndGet();
+            return address != null ? new ResolvedAddressCache.Resolution(address, mock(MailAddressResolver.class)) : null;
+        };
+    }
+
+    @Test
+    void keepsAddressesForTheirTtl() {
+        assertEquals("alice@example.com", cache.resolve("alice", resolver("alice@example.com")));
+        now.addAndGet(ResolvedAddressCache.TTL - 1);
+        assertEquals("alice@example.com", cache.resolve("alice", resolver("other@example.com")));
+        assertEquals(1, calls.get());
+
+        now.incrementAndGet();
+        assertEquals("other@example.com", cache.resolve("alice", resolver("other@example.com")));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void keepsMissingAddressesForTheNegativeTtl() {
+        assertNull(cache.resolve("ghost", resolver(null)));
+        assertNull(cache.resolve("ghost", resolver("ghost@example.com")));
+        assertEquals(1, calls.get());
+
+        now.addAndGet(ResolvedAddressCache.NEGATIVE_TTL);
+        assertEquals("ghost@example.com", cache.resolve("ghost", resolver("ghost@example.com")));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void forgetsInvalidatedUsers() {
+        cache.resolve("alice", resolver("alice@example.com"));
+        cache.resolve("bob", resolver("bob@example.com"));
+        cache.invalidate("alice");
+        assertEquals("alice@example.org", cache.resolve("alice", resolver("alice@example.org")));
+        assertEquals("bob@example.com", cache.resolve("bob", resolver("bob@example.org")));
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    void doesNotCacheUsersWithoutId() {
+        cache.resolve(null, resolver("alice@example.com"));
+        cache.resolve(null, resolver("alice@example.com"));
+        assertEquals(2, calls.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void warmsUpFromTheIndex(@TempDir File dir) throws Exception {
+        ResolvedAddressIndex index = new ResolvedAddressIndex(new File(dir, "index.xml"), now::get);
+        index.load();
+        List<Runnable> background = new ArrayList<>();
+        ResolvedAddressCache first = new ResolvedAddressCache(now::get, () -> index, background::add);
+        assertEquals("alice@example.com", first.resolve("alice", resolver("alice@example.com")));
+        assertNull(first.resolve("ghost", resolver(null)));
+        index.save();
+
+        // after a restart
+        ResolvedAddressIndex reloaded = new ResolvedAddressIndex(new File(dir, "index.xml"), now::get);
+        ResolvedAddressCache second = new ResolvedAddressCache(now::get, () -> reloaded, background::add);
+        assertEquals("alice@example.org", second.resolve("alice", resolver("alice@example.org")), "not loaded yet");
+        second.invalidateAll();
+        reloaded.load();
+        assertTrue(reloaded.getRecords().isEmpty(), "cleared before it was loaded");
+
+        ResolvedAddressCache third = new ResolvedAddressCache(now::get, () -> index, background::add);
+        assertEquals(3, calls.get());
+        assertEquals("alice@example.com", third.resolve("alice", resolver("alice@example.net")));
+        assertEquals(3, calls.get());
+        assertEquals(1, background.size());
+        background.get(0).run();
+        assertEquals(4, calls.get());
+        assertEquals("alice@example.net", index.lookup("alice").getAddress());
+        assertEquals("alice@example.net", third.resolve("alice", resolver("alice@example.com")));
+    }
+
+    @Test
+    void refreshesEachUserOnceAtATime(@TempDir File dir) throws Exception {
+        ResolvedAddressIndex index = new ResolvedAddressIndex(new File(dir, "index.xml"), now::get);
+        index.load();
+        index.put("alice", "alice@example.com", MailAddressResolver.class.getName(), now.get());
+        List<Runnable> background = new ArrayList<>();
+        ResolvedAddressCache cache = new ResolvedAddressCache(now::get, () -> index, background::add);
+        assertEquals("alice@example.com", cache.resolve("alice", resolver("alice@example.net")));
+        now.addAndGet(Math.max(ResolvedAddressCache.TTL, ResolvedAddressCache.NEGATIVE_TTL) + 1);
+        assertEquals("alice@example.com", cache.resolve("alice", resolver("alice@example.net")));
+        assertEquals(Map.of("alice", "alice@example.com"), cache.resolveAll(List.of("alice"), u -> u, users -> Map.of()));
+        assertEquals(1, background.size());
+        assertEquals(0, calls.get());
+
+        background.get(0).run();
+        assertEquals(1, calls.get());
+        assertEquals("alice@example.net", cache.resolve("alice", resolver("alice@example.org")));
+    }
+
+    @Test
+    void dropsRefreshesWhichDoNotFit(@TempDir File dir) throws Exception {
+        ResolvedAddressIndex index = new ResolvedAddressIndex(new File(dir, "index.xml"), now::get);
+        index.load();
+        index.put("alice", "alice@example.com", MailAddressResolver.class.getName(), now.get());
+        AtomicInteger rejected = new AtomicInteger();
+        ResolvedAddressCache cache = new ResolvedAddressCache(now::get, () -> index, command -> {
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException();
+        });
+        assertEquals("alice@example.com", cache.resolve("alice", resolver("alice@example.net")));
+        now.addAndGet(Math.max(ResolvedAddressCache.TTL, ResolvedAddressCache.NEGATIVE_TTL) + 1);
+        assertEquals("alice@example.com", cache.resolve("alice", resolver("alice@example.net")));
+        assertEquals(2, rejected.get(), "tried again");
+        assertEquals(0, calls.get());
+    }
+}
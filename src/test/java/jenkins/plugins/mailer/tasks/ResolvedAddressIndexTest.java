@@ -0,0 +1,67 @@
+package jenkins.plugins.mailer.tasks;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResolvedAddressIndexTest {
+
+    @TempDir
+    File dir;
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    @Test
+    void keepsRecordsAcrossRestarts() throws Exception {
+        ResolvedAddressIndex index = new ResolvedAddressIndex(new File(dir, "index.xml"), now::get);
+        index.load();
+        index.put("alice", "alice@example.com", "some.Resolver", now.get());
+        index.save();
+
+        ResolvedAddressIndex reloaded = new ResolvedAddressIndex(new File(dir, "index.xml"), now::get);
+        assertFalse(reloaded.isLoaded());
+        assertNull(reloaded.lookup("alice"));
+        reloaded.load();
+        ResolvedAddressIndex.Record record = reloaded.lookup("alice");
+        assertEquals("alice@example.com", record.getAddress());
+        assertEquals("some.Resolver", record.getResolver());
+        assertEquals(1_000_000, record.getTimestamp());
+    }
+
+    @Test
+    void ignoresOldRecords() throws Exception {
+        ResolvedAddressIndex index = new ResolvedAddressIndex(new File(dir, "index.xml"), now::get);
+        index.load();
+        index.put("alice", "alice@example.com", "some.Resolver", now.get());
+        index.save();
+        now.addAndGet(ResolvedAddressIndex.MAX_AGE + 1);
+        assertNull(index.lookup("alice"));
+
+        ResolvedAddressIndex reloaded = new ResolvedAddressIndex(new File(dir, "index.xml"), now::get);
+        reloaded.load();
+        assertTrue(reloaded.getRecords().isEmpty());
+    }
+
+    @Test
+    void doesNotBringBackUsersRemovedBeforeLoading() throws Exception {
+        ResolvedAddressIndex index = new ResolvedAddressIndex(new File(dir, "index.xml"), now::get);
+        index.load();
+        index.put("alice", "alice@example.com", "some.Resolver", now.get());
+        index.put("bob", "bob@example.com", "some.Resolver", now.get());
+        index.save();
+
+        ResolvedAddressIndex reloaded = new ResolvedAddressIndex(new File(dir, "index.xml"), now::get);
+        reloaded.remove("alice");
+        reloaded.put("bob", "bob@example.org", "other.Resolver", now.get() + 1);
+        reloaded.load();
+        assertNull(reloaded.lookup("alice"));
+        assertEquals("bob@example.org", reloaded.lookup("bob").getAddress());
+    }
+}
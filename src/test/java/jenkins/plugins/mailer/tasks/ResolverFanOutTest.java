@@ -0,0 +1,163 @@
+package jenkins.plugins.mailer.tasks;
+
+import hudson.model.User;
+import hudson.tasks.MailAddressResolver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ResolverFanOutTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final User user = mock(User.class);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void keepsPriorityOrder() {
+        MailAddressResolver slow = resolver(() -> {
+            Thread.sleep(200);
+            return "slow@example.com";
+        });
+        MailAddressResolver fast = resolver(() -> "fast@example.com");
+        assertEquals("slow@example.com", ResolverFanOut.resolve(executor, Arrays.asList(slow, fast), user, 10_000).getAddress());
+    }
+
+    @Test
+    void cancelsLowerPriorityResolvers() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        MailAddressResolver first = resolver(() -> "first@example.com");
+        MailAddressResolver hung = resolver(() -> {
+            try {
+                Thread.sleep(60_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return "hung@example.com";
+        });
+        assertEquals("first@example.com", ResolverFanOut.resolve(executor, Arrays.asList(first, hung), user, 10_000).getAddress());
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void takesAnswersWhichArrivedBeforeTheDeadline() {
+        MailAddressResolver hung = resolver(() -> {
+            Thread.sleep(60_000);
+            return "hung@example.com";
+        });
+        MailAddressResolver failing = resolver(() -> {
+            throw new IllegalStateException("broken");
+        });
+        MailAddressResolver nothing = resolver(() -> null);
+        MailAddressResolver last = resolver(() -> "last@example.com");
+        assertEquals("last@example.com", ResolverFanOut.resolve(executor, Arrays.asList(hung, failing, nothing, last), user, 200).getAddress());
+        assertNull(ResolverFanOut.resolve(executor, Arrays.asList(hung, failing, nothing), user, 200));
+    }
+
+    @Test
+    void skipsResolverWhichNeverReturns() {
+        int maxInFlight = ResolverFanOut.MAX_IN_FLIGHT;
+        ResolverFanOut.MAX_IN_FLIGHT = 1;
+        try {
+            MailAddressResolver stuck = resolver(() -> {
+                // ignores being cancelled
+                while (true) {
+                    try {
+                        release.await();
+                        return "stuck@example.com";
+                    } catch (InterruptedException e) {
+                        // keep waiting
+                    }
+                }
+            });
+            MailAddressResolver other = resolver(() -> "other@example.com");
+            assertEquals("other@example.com", ResolverFanOut.resolve(executor, Arrays.asList(stuck, other), user, 200).getAddress());
+
+            // the stuck lookup still holds the only thread the resolver may use, so it is not asked again
+            long start = System.nanoTime();
+            assertEquals("other@example.com", ResolverFanOut.resolve(executor, Arrays.asList(stuck, other), user, 10_000).getAddress());
+            assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5);
+            verify(stuck, times(1)).findMailAddressFor(user);
+        } finally {
+            ResolverFanOut.MAX_IN_FLIGHT = maxInFlight;
+        }
+    }
+
+    @Test
+    void batchesTakeAddressesInPriorityOrder() {
+        User other = mock(User.class);
+        User unknown = mock(User.class);
+        MailAddressResolver slow = batchResolver(() -> {
+            Thread.sleep(200);
+            return Map.of(user, "slow@example.com");
+        });
+        MailAddressResolver fast = batchResolver(() -> Map.of(user, "fast@example.com", other, "other@example.com"));
+        Map<User, ResolvedAddressCache.Resolution> found = ResolverFanOut.resolveAll(executor, Arrays.asList(slow, fast),
+                Arrays.asList(user, other, unknown), 10_000);
+        assertEquals(2, found.size());
+        assertEquals("slow@example.com", found.get(user).getAddress());
+        assertEquals("other@example.com", found.get(other).getAddress());
+        verify(slow, times(1)).findMailAddressesFor(anyCollection());
+        verify(slow, never()).findMailAddressFor(any());
+    }
+
+    @Test
+    void batchesShareOneDeadline() {
+        MailAddressResolver hung = batchResolver(() -> {
+            Thread.sleep(60_000);
+            return Map.of(user, "hung@example.com");
+        });
+        MailAddressResolver alsoHung = batchResolver(() -> {
+            Thread.sleep(60_000);
+            return Map.of(user, "hung@example.com");
+        });
+        MailAddressResolver last = batchResolver(() -> Map.of(user, "last@example.com"));
+        long start = System.nanoTime();
+        Map<User, ResolvedAddressCache.Resolution> found = ResolverFanOut.resolveAll(executor, Arrays.asList(hung, alsoHung, last),
+                Arrays.asList(user), 200);
+        assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5);
+        assertEquals("last@example.com", found.get(user).getAddress());
+    }
+
+    private interface BatchAnswer {
+        Map<User, String> call() throws Exception;
+    }
+
+    private MailAddressResolver batchResolver(BatchAnswer answer) {
+        MailAddressResolver resolver = mock(MailAddressResolver.class);
+        when(resolver.findMailAddressesFor(anyCollection())).thenAnswer(invocation -> answer.call());
+        return resolver;
+    }
+
+    private interface Answer {
+        String call() throws Exception;
+    }
+
+    private MailAddressResolver resolver(Answer answer) {
+        MailAddressResolver resolver = mock(MailAddressResolver.class);
+        when(resolver.findMailAddressFor(user)).thenAnswer(invocation -> answer.call());
+        return resolver;
+    }
+}
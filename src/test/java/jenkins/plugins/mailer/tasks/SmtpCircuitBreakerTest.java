@@ -0,0 +1,102 @@
+package jenkins.plugins.mailer.tasks;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLHandshakeException;
+
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SmtpCircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final SmtpCircuitBreaker breaker = new SmtpCircuitBreaker("smtp://mail.example.com:25", now::get);
+
+    @Test
+    void opensAfterConsecutiveConnectionFailures() throws Exception {
+        for (int i = 0; i < SmtpCircuitBreaker.FAILURE_THRESHOLD; i++) {
+            assertEquals(SmtpCircuitBreaker.State.CLOSED, breaker.getState());
+            breaker.acquirePermission();
+            breaker.onFailure(connectionFailure());
+        }
+        assertEquals(SmtpCircuitBreaker.State.OPEN, breaker.getState());
+        assertThrows(SmtpCircuitBreaker.OpenException.class, breaker::acquirePermission);
+    }
+
+    @Test
+    void rejectionsDoNotCount() throws Exception {
+        for (int i = 0; i < SmtpCircuitBreaker.FAILURE_THRESHOLD - 1; i++) {
+            breaker.acquirePermission();
+            breaker.onFailure(connectionFailure());
+        }
+        breaker.acquirePermission();
+        breaker.onFailure(new SendFailedException("550 no such user"));
+        assertEquals(0, breaker.getConsecutiveFailures());
+
+        breaker.acquirePermission();
+        breaker.onFailure(connectionFailure());
+        assertEquals(SmtpCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void probesOnceAfterOpenDuration() throws Exception {
+        trip();
+        now.addAndGet(SmtpCircuitBreaker.OPEN_DURATION);
+        assertEquals(SmtpCircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        breaker.acquirePermission();
+        // only one probe at a time
+        assertThrows(SmtpCircuitBreaker.OpenException.class, breaker::acquirePermission);
+
+        breaker.onFailure(new MessagingException("timeout", new SocketTimeoutException()));
+        assertEquals(SmtpCircuitBreaker.State.OPEN, breaker.getState());
+        assertThrows(SmtpCircuitBreaker.OpenException.class, breaker::acquirePermission);
+
+        now.addAndGet(SmtpCircuitBreaker.OPEN_DURATION);
+        breaker.acquirePermission();
+        breaker.onSuccess();
+        assertEquals(SmtpCircuitBreaker.State.CLOSED, breaker.getState());
+        assertDoesNotThrow(breaker::acquirePermission);
+    }
+
+    @Test
+    void abandonedProbeLetsTheNextOneThrough() throws Exception {
+        trip();
+        now.addAndGet(SmtpCircuitBreaker.OPEN_DURATION);
+        breaker.acquirePermission();
+        breaker.abandon();
+        assertDoesNotThrow(breaker::acquirePermission);
+    }
+
+    @Test
+    void recognizesConnectionFailures() {
+        assertTrue(SmtpCircuitBreaker.isConnectionFailure(connectionFailure()));
+        assertTrue(SmtpCircuitBreaker.isConnectionFailure(new MessagingException("outer", new MessagingException("inner", new SocketTimeoutException()))));
+        assertFalse(SmtpCircuitBreaker.isConnectionFailure(new MessagingException("535 authentication failed")));
+        assertTrue(SmtpCircuitBreaker.isConnectionFailure(new MessagingException("Unknown SMTP host", new UnknownHostException("smtp.invalid"))));
+        assertFalse(SmtpCircuitBreaker.isConnectionFailure(new MessagingException("handshake", new SSLHandshakeException("bad certificate"))));
+        assertFalse(SmtpCircuitBreaker.isConnectionFailure(new MessagingException("Exception reading response", new SocketException("Connection reset"))));
+    }
+
+    private void trip() throws Exception {
+        for (int i = 0; i < SmtpCircuitBreaker.FAILURE_THRESHOLD; i++) {
+            breaker.acquirePermission();
+            breaker.onFailure(connectionFailure());
+        }
+    }
+
+    private static MessagingException connectionFailure() {
+        return new MessagingException("Couldn't connect to host", new ConnectException("Connection refused"));
+    }
+}
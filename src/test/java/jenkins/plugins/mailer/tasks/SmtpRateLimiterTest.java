@@ -0,0 +1,62 @@
+package jenkins.plugins.mailer.tasks;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SmtpRateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final SmtpRateLimiter limiter = new SmtpRateLimiter(now::get);
+
+    @Test
+    void unlimitedByDefault() {
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, limiter.reserve());
+        }
+    }
+
+    @Test
+    void burstThenSustainedRate() {
+        limiter.configure(2, 3);
+
+        // a full bucket lets the burst through
+        assertEquals(0, limiter.reserve());
+        assertEquals(0, limiter.reserve());
+        assertEquals(0, limiter.reserve());
+
+        // then senders are spaced out at the sustained rate, in arrival order
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), limiter.reserve());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), limiter.reserve());
+
+        // once time has passed the reservations are paid off and the bucket fills up again
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertEquals(0, limiter.reserve());
+        assertEquals(0, limiter.reserve());
+        assertEquals(0, limiter.reserve());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), limiter.reserve());
+    }
+
+    @Test
+    void disablingRemovesTheLimit() {
+        limiter.configure(1, 1);
+        assertEquals(0, limiter.reserve());
+        assertEquals(TimeUnit.SECONDS.toNanos(1), limiter.reserve());
+
+        limiter.configure(0, 1);
+        assertEquals(0, limiter.reserve());
+    }
+
+    @Test
+    void countsWaits() throws Exception {
+        limiter.configure(1000, 1);
+        limiter.acquire();
+        limiter.acquire();
+        assertEquals(2, limiter.getAcquiredCount());
+        assertEquals(1, limiter.getDelayedCount());
+        assertEquals(1, limiter.getMaxWaitMillis());
+    }
+}
@@ -0,0 +1,98 @@
+package jenkins.plugins.mailer.tasks;
+
+import jakarta.mail.Session;
+import org.eclipse.angus.mail.util.MailConnectException;
+import org.eclipse.angus.mail.util.SocketConnectException;
+import org.junit.jupiter.api.Test;
+
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SmtpRelayBalancerTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final SmtpRelayBalancer balancer = new SmtpRelayBalancer(now::get);
+    private final Session primary = Session.getInstance(new Properties());
+    private final SmtpCircuitBreaker breakerOfA = new SmtpCircuitBreaker("smtp://a", now::get);
+    private final SmtpRelayBalancer.Relay a = new SmtpRelayBalancer.Relay("a", primary, 1, breakerOfA);
+    private final SmtpRelayBalancer.Relay b = new SmtpRelayBalancer.Relay("b", Session.getInstance(new Properties()), 3,
+            new SmtpCircuitBreaker("smtp://b", now::get));
+
+    @Test
+    void onlyBalancesThePrimarySession() {
+        balancer.configure(primary, Arrays.asList(a, b), SmtpRelayBalancer.Strategy.PRIORITY);
+        assertNull(balancer.select(Session.getInstance(new Properties())));
+        assertEquals(Arrays.asList(a, b), balancer.select(primary));
+    }
+
+    @Test
+    void roundRobinFollowsWeights() {
+        balancer.configure(primary, Arrays.asList(a, b), SmtpRelayBalancer.Strategy.ROUND_ROBIN);
+        List<SmtpRelayBalancer.Relay> firsts = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            firsts.add(balancer.select(primary).get(0));
+        }
+        assertEquals(Arrays.asList(b, a, b, b, b, a, b, b), firsts);
+    }
+
+    @Test
+    void leastOutstandingAccountsForWeight() {
+        balancer.configure(primary, Arrays.asList(a, b), SmtpRelayBalancer.Strategy.LEAST_OUTSTANDING);
+        a.begin();
+        assertEquals(b, balancer.select(primary).get(0));
+        b.begin();
+        b.begin();
+        assertEquals(b, balancer.select(primary).get(0));
+        b.begin();
+        b.begin();
+        assertEquals(Arrays.asList(a, b), balancer.select(primary));
+    }
+
+    @Test
+    void failedRelayLeavesRotationUntilCooledDown() {
+        balancer.configure(primary, Arrays.asList(a, b), SmtpRelayBalancer.Strategy.PRIORITY);
+        balancer.onFailure(a);
+        assertEquals(Arrays.asList(b), balancer.select(primary));
+
+        now.addAndGet(SmtpRelayBalancer.BASE_COOLDOWN);
+        assertEquals(Arrays.asList(a, b), balancer.select(primary));
+
+        // a second failure keeps it out twice as long
+        balancer.onFailure(a);
+        now.addAndGet(SmtpRelayBalancer.BASE_COOLDOWN);
+        assertEquals(Arrays.asList(b), balancer.select(primary));
+
+        balancer.onSuccess(a);
+        assertEquals(Arrays.asList(a, b), balancer.select(primary));
+    }
+
+    @Test
+    void triesTheLongestCooledDownRelayWhenAllFailed() {
+        balancer.configure(primary, Arrays.asList(a, b), SmtpRelayBalancer.Strategy.PRIORITY);
+        balancer.onFailure(a);
+        now.addAndGet(1000);
+        balancer.onFailure(b);
+        assertEquals(Arrays.asList(a), balancer.select(primary));
+    }
+
+    @Test
+    void relayWithOpenBreakerIsSkipped() throws Exception {
+        balancer.configure(primary, Arrays.asList(a, b), SmtpRelayBalancer.Strategy.PRIORITY);
+        for (int i = 0; i < SmtpCircuitBreaker.FAILURE_THRESHOLD; i++) {
+            breakerOfA.acquirePermission();
+            breakerOfA.onFailure(new MailConnectException(new SocketConnectException("refused", new ConnectException(), "a", 25, 1000)));
+        }
+        assertEquals(Arrays.asList(b), balancer.select(primary));
+
+        // once half open, a gets its probe again
+        now.addAndGet(SmtpCircuitBreaker.OPEN_DURATION);
+        assertEquals(Arrays.asList(a, b), balancer.select(primary));
+    }
+}
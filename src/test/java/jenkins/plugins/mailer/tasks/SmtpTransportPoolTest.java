@@ -0,0 +1,73 @@
+package jenkins.plugins.mailer.tasks;
+
+import jakarta.mail.Authenticator;
+import jakarta.mail.Message;
+import jakarta.mail.PasswordAuthentication;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.Test;
+import org.jvnet.mock_javamail.Mailbox;
+
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SmtpTransportPoolTest {
+
+    @Test
+    void sendsConsecutiveMessages() throws Exception {
+        InternetAddress to = new InternetAddress("pooled@example.com");
+        Mailbox inbox = Mailbox.get(to);
+        inbox.clear();
+        Session session = session("relay.example.com", null, null);
+
+        SmtpTransportPool pool = new SmtpTransportPool();
+        for (int i = 0; i < 3; i++) {
+            MimeMessage msg = new MimeMessage(session);
+            msg.setRecipient(Message.RecipientType.TO, to);
+            msg.setSubject("pooled #" + i);
+            msg.setText("pooled body");
+            msg.saveChanges();
+            pool.send(msg);
+        }
+        assertEquals(3, inbox.size());
+        pool.closeAll();
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    void refusesMessageWithoutRecipients() throws Exception {
+        MimeMessage msg = new MimeMessage(session("relay.example.com", null, null));
+        msg.setText("nobody");
+        msg.saveChanges();
+        assertThrows(SendFailedException.class, () -> new SmtpTransportPool().send(msg));
+    }
+
+    @Test
+    void keyDistinguishesConnectionSettings() {
+        SmtpTransportPool.Key plain = SmtpTransportPool.Key.of(session("relay.example.com", null, null), "smtp");
+        assertEquals(plain, SmtpTransportPool.Key.of(session("relay.example.com", null, null), "smtp"));
+        assertNotEquals(plain, SmtpTransportPool.Key.of(session("other.example.com", null, null), "smtp"));
+
+        SmtpTransportPool.Key authenticated = SmtpTransportPool.Key.of(session("relay.example.com", "user", "secret"), "smtp");
+        assertNotEquals(plain, authenticated);
+        assertEquals(authenticated, SmtpTransportPool.Key.of(session("relay.example.com", "user", "secret"), "smtp"));
+        assertNotEquals(authenticated, SmtpTransportPool.Key.of(session("relay.example.com", "user", "wrong"), "smtp"));
+    }
+
+    private static Session session(String host, String user, String password) {
+        Properties props = new Properties(System.getProperties());
+        props.put("mail.smtp.host", host);
+        Authenticator authenticator = user == null ? null : new Authenticator() {
+            @Override
+            protected PasswordAuthentication getPasswordAuthentication() {
+                return new PasswordAuthentication(user, password);
+            }
+        };
+        return Session.getInstance(props, authenticator);
+    }
+}
@@ -0,0 +1,93 @@
+package jenkins.plugins.mailer.tasks;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SuppressionListTest {
+
+    @TempDir
+    File dir;
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    private SuppressionList newList() throws Exception {
+        SuppressionList list = new SuppressionList(new File(dir, "suppressed.xml"), now::get);
+        list.load();
+        return list;
+    }
+
+    @Test
+    void suppressesAddresses() throws Exception {
+        SuppressionList list = newList();
+        assertEquals(2, list.add(Arrays.asList("Alice <Alice@example.com>", "bob@example.com", " "), "550 no such user", -1));
+        assertEquals("550 no such user", list.lookup("alice@EXAMPLE.com").getReason());
+        assertNotNull(list.lookup("bob@example.com"));
+        assertNull(list.lookup("carol@example.com"));
+
+        assertEquals(1, list.expire(Arrays.asList("bob@example.com", "carol@example.com")));
+        assertNull(list.lookup("bob@example.com"));
+        assertEquals(1, list.getEntries().size());
+    }
+
+    @Test
+    void entriesExpire() throws Exception {
+        SuppressionList list = newList();
+        list.add(Collections.singletonList("alice@example.com"), "bounced", 1000);
+        list.add(Collections.singletonList("bob@example.com"), "bounced", 0);
+        now.addAndGet(1000);
+        assertNull(list.lookup("alice@example.com"));
+        assertNotNull(list.lookup("bob@example.com"));
+
+        now.addAndGet(1000);
+        list.add(Collections.singletonList("carol@example.com"), "bounced", 0);
+        assertEquals(2, list.expireBefore(now.get()), "bob, suppressed earlier, and alice, which expired");
+        assertNotNull(list.lookup("carol@example.com"));
+    }
+
+    @Test
+    void tooLongSuppressionsNeverExpire() throws Exception {
+        SuppressionList list = newList();
+        list.add(Collections.singletonList("alice@example.com"), "bounced", Long.MAX_VALUE);
+        assertEquals(0, list.lookup("alice@example.com").getExpires());
+        now.addAndGet(1000);
+        assertNotNull(list.lookup("alice@example.com"));
+        assertEquals(0, list.expireBefore(0), "not expired");
+    }
+
+    @Test
+    void keepsEntriesAcrossRestarts() throws Exception {
+        newList().add(Arrays.asList("alice@example.com", "bob@example.com"), "bounced", -1);
+        SuppressionList reloaded = newList();
+        assertEquals("bounced", reloaded.lookup("alice@example.com").getReason());
+        assertEquals(now.get() + SuppressionList.TTL, reloaded.lookup("bob@example.com").getExpires());
+
+        now.addAndGet(SuppressionList.TTL);
+        assertEquals(0, newList().getEntries().size());
+    }
+
+    @Test
+    void bloomFilterHasNoFalseNegatives() {
+        BloomFilter bloom = new BloomFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            bloom.add("user" + i + "@example.com");
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(bloom.mightContain("user" + i + "@example.com"));
+            if (bloom.mightContain("other" + i + "@example.com")) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 50, falsePositives + " false positives");
+    }
+}
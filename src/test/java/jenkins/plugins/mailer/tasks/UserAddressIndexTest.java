@@ -0,0 +1,48 @@
+package jenkins.plugins.mailer.tasks;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UserAddressIndexTest {
+
+    private final UserAddressIndex index = new UserAddressIndex();
+
+    @Test
+    void findsUsersByAddress() {
+        index.configured("alice", "Alice <Alice@Example.com>");
+        index.resolved("bob", "bob@example.com");
+        assertEquals(Collections.singletonList("alice"), index.getUserIds("alice@example.com"));
+        assertEquals(Collections.singletonList("alice"), index.getUserIds("\"A. Smith\" <ALICE@example.COM>"));
+        assertEquals(Collections.singletonList("bob"), index.getUserIds("bob@example.com"));
+        assertEquals(Collections.emptyList(), index.getUserIds("carol@example.com"));
+    }
+
+    @Test
+    void putsConfiguredAddressesFirst() {
+        index.resolved("bob", "team@example.com");
+        index.configured("alice", "team@example.com");
+        index.resolved("alice", "team@example.com");
+        assertEquals(Arrays.asList("alice", "bob"), index.getUserIds("team@example.com"));
+    }
+
+    @Test
+    void followsChanges() {
+        index.configured("alice", "alice@example.com");
+        index.resolved("alice", "alice@example.org");
+        index.configured("alice", "alice@example.net");
+        assertEquals(Collections.emptyList(), index.getUserIds("alice@example.com"));
+        assertEquals(Collections.singletonList("alice"), index.getUserIds("alice@example.net"));
+        assertEquals(Collections.singletonList("alice"), index.getUserIds("alice@example.org"));
+
+        index.resolved("alice", null);
+        assertEquals(Collections.emptyList(), index.getUserIds("alice@example.org"));
+
+        index.remove("alice");
+        assertEquals(Collections.emptyList(), index.getUserIds("alice@example.net"));
+        assertEquals(0, index.size());
+    }
+}